@@ -29,6 +29,9 @@ import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.client.registry.ClientRegistry;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ClientTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.network.FMLNetworkEvent.ClientDisconnectionFromServerEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
@@ -39,11 +42,13 @@ import net.mcft.copy.backpacks.api.IBackpack;
 import net.mcft.copy.backpacks.ProxyCommon;
 import net.mcft.copy.backpacks.block.entity.TileEntityBackpack;
 import net.mcft.copy.backpacks.client.KeyBindingHandler;
+import net.mcft.copy.backpacks.client.LidAnimations;
 import net.mcft.copy.backpacks.client.RendererBackpack;
 import net.mcft.copy.backpacks.item.ItemBackpack;
 import net.mcft.copy.backpacks.misc.util.MiscUtils;
 import net.mcft.copy.backpacks.misc.util.NbtUtils;
 import net.mcft.copy.backpacks.misc.util.ReflectUtils;
+import net.mcft.copy.backpacks.network.BackpacksMessageHandler;
 
 @SideOnly(Side.CLIENT)
 public class ProxyClient extends ProxyCommon {
@@ -82,6 +87,23 @@ public class ProxyClient extends ProxyCommon {
 	}
 	
 	
+	@SubscribeEvent
+	public void onClientTick(ClientTickEvent event) {
+		// Update equipped backpacks in the client world. Equivalent
+		// to what WorldTickEvent does for server worlds in ProxyCommon.
+		Minecraft mc = Minecraft.getMinecraft();
+		if ((event.phase != Phase.END) || (mc.world == null) || mc.isGamePaused()) return;
+		updateEquippedBackpacks(mc.world);
+		LidAnimations.update(mc.world);
+	}
+	
+	@SubscribeEvent
+	public void onDisconnectedFromServer(ClientDisconnectionFromServerEvent event) {
+		// Messages of the server that was left shouldn't be handled anymore.
+		BackpacksMessageHandler.discardClientMessages();
+	}
+	
+	
 	// Lots of code just to disable capes when backpacks are equipped!
 	
 	private static DataParameter<Byte> PLAYER_MODEL_FLAG =
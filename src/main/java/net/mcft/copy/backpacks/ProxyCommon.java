@@ -1,31 +1,41 @@
 package net.mcft.copy.backpacks;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.inventory.EntityEquipmentSlot;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.EnumActionResult;
+import net.minecraft.util.EnumFacing;
 import net.minecraft.util.EnumHand;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.common.capabilities.CapabilityManager;
 import net.minecraftforge.event.AttachCapabilitiesEvent;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
-import net.minecraftforge.event.entity.living.LivingEvent.LivingUpdateEvent;
+import net.minecraftforge.event.entity.living.LivingEquipmentChangeEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerChangedDimensionEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedInEvent;
+import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerRespawnEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.WorldTickEvent;
 
 import net.mcft.copy.backpacks.WearableBackpacks;
 import net.mcft.copy.backpacks.api.BackpackHelper;
@@ -33,9 +43,14 @@ import net.mcft.copy.backpacks.api.BackpackRegistry;
 import net.mcft.copy.backpacks.api.IBackpack;
 import net.mcft.copy.backpacks.api.IBackpackData;
 import net.mcft.copy.backpacks.api.IBackpackType;
+import net.mcft.copy.backpacks.block.entity.TileEntityBackpack;
 import net.mcft.copy.backpacks.container.SlotArmorBackpack;
 import net.mcft.copy.backpacks.item.DyeWashingHandler;
 import net.mcft.copy.backpacks.misc.BackpackCapability;
+import net.mcft.copy.backpacks.misc.BackpackDeaths;
+import net.mcft.copy.backpacks.misc.BackpackWearers;
+import net.mcft.copy.backpacks.misc.LostBackpacks;
+import net.mcft.copy.backpacks.misc.util.LangUtils;
 import net.mcft.copy.backpacks.misc.util.WorldUtils;
 import net.mcft.copy.backpacks.network.MessageBackpackUpdate;
 
@@ -64,24 +79,55 @@ public class ProxyCommon {
 	
 	@SubscribeEvent
 	public void onPlayerLogin(PlayerLoggedInEvent event) {
+		WearableBackpacks.CHANNEL.beginJoin(event.player);
 		sendBackpackStack(event.player, event.player);
 	}
 	@SubscribeEvent
+	public void onPlayerLogout(PlayerLoggedOutEvent event) {
+		WearableBackpacks.CHANNEL.discardPending(event.player);
+	}
+	@SubscribeEvent
 	public void onPlayerChangedDimensionEvent(PlayerChangedDimensionEvent event) {
+		WearableBackpacks.CHANNEL.beginJoin(event.player);
 		sendBackpackStack(event.player, event.player);
 	}
 	@SubscribeEvent
 	public void onPlayerRespawn(PlayerRespawnEvent event) {
+		// Give players back the last backpack they lost, if any.
+		if (!event.player.world.isRemote) {
+			LostBackpacks lost = LostBackpacks.get(event.player.world);
+			List<LostBackpacks.LostBackpack> backpacks = lost.get(event.player.getUniqueID());
+			if (!backpacks.isEmpty() && lost.recover(event.player, backpacks.get(backpacks.size() - 1)))
+				LangUtils.chatMessage(event.player, "backpackRecovered");
+		}
+		WearableBackpacks.CHANNEL.beginJoin(event.player);
 		sendBackpackStack(event.player, event.player);
 	}
 	@SubscribeEvent
 	public void onPlayerStartTracking(PlayerEvent.StartTracking event) {
+		// Wake up dormant wearers, see updateEquippedBackpack.
+		BackpackCapability backpack = (BackpackCapability)
+			BackpackHelper.getBackpackCapability(event.getTarget());
+		if (backpack != null) {
+			backpack.thaw();
+			// Also covers wearers woken up earlier by something reading their data.
+			if (!backpack.getStack().isEmpty()) BackpackWearers.add(backpack);
+		}
 		sendBackpackStack(event.getTarget(), event.getEntityPlayer());
 	}
+	@SubscribeEvent
+	public void onPlayerStopTracking(PlayerEvent.StopTracking event) {
+		// Entity might not be tracked by anyone anymore.
+		BackpackCapability backpack = (BackpackCapability)
+			BackpackHelper.getBackpackCapability(event.getTarget());
+		if (backpack != null) backpack.checkDormant = true;
+	}
 	private void sendBackpackStack(Entity carrier, EntityPlayer player) {
+		// Only the wearer receives the full stack, others just what's needed to render it.
 		BackpackCapability backpack = (BackpackCapability)BackpackHelper.getBackpack(carrier);
-		if (backpack != null) WearableBackpacks.CHANNEL.sendTo(
-			MessageBackpackUpdate.stack(carrier, backpack.stack), player);
+		if (backpack != null) WearableBackpacks.CHANNEL.queueBackpackUpdate((carrier == player)
+			? MessageBackpackUpdate.stack(carrier, backpack.stack)
+			: MessageBackpackUpdate.render(carrier, backpack.stack, (backpack.playersUsing > 0)), player);
 	}
 	
 	// Backpack interactions / events
@@ -138,7 +184,7 @@ public class ProxyCommon {
 		EntityPlayer player = event.getEntityPlayer();
 		EntityLivingBase target = (EntityLivingBase)event.getTarget();
 		
-		BackpackCapability backpack = (BackpackCapability)target.getCapability(IBackpack.CAPABILITY, null);
+		BackpackCapability backpack = (BackpackCapability)BackpackHelper.getBackpackCapability(target);
 		if ((backpack == null) || !BackpackHelper.canInteractWithEquippedBackpack(player, target)) return;
 		
 		IBackpackType type = backpack.getType();
@@ -159,22 +205,82 @@ public class ProxyCommon {
 		
 	}
 	
+	// Updating equipped backpacks
+	
 	@SubscribeEvent
-	public void onLivingUpdate(LivingUpdateEvent event) {
+	public void onEntityJoinWorld(EntityJoinWorldEvent event) {
+		// Keep track of entities wearing a backpack when they're loaded, spawned or
+		// moved to a different world. On the client, equipment is synced separately
+		// by Vanilla, so just keep track of any entity that could wear one.
+		if (!(event.getEntity() instanceof EntityLivingBase)) return;
 		
-		// Update equipped backpacks and check
-		// if they've been removed somehow.
-		
-		EntityLivingBase entity = event.getEntityLiving();
-		if (!BackpackRegistry.canEntityWearBackpacks(entity)) return;
+		// Players get a new inventoryContainer whenever their entity is
+		// created (login, respawn, changing dimension on the client), so
+		// replace the chest armor slot once here instead of every tick.
+		if (event.getEntity() instanceof EntityPlayer)
+			SlotArmorBackpack.replace((EntityPlayer)event.getEntity());
 		
-		BackpackCapability backpack = (BackpackCapability)entity
-			.getCapability(IBackpack.CAPABILITY, null);
+		BackpackCapability backpack = (BackpackCapability)
+			BackpackHelper.getBackpackCapability(event.getEntity());
+		if ((backpack != null) && (event.getWorld().isRemote ||
+		    backpack.isChestArmor() || !backpack.getStack().isEmpty()))
+			BackpackWearers.add(backpack);
+	}
+	
+	@SubscribeEvent
+	public void onLivingEquipmentChange(LivingEquipmentChangeEvent event) {
+		// Equipped stack and backpack type are cached in the capability,
+		// so make sure they're looked up again when chest armor changes.
+		if (event.getSlot() != EntityEquipmentSlot.CHEST) return;
+		BackpackCapability backpack = (BackpackCapability)
+			BackpackHelper.getBackpackCapability(event.getEntityLiving());
 		if (backpack == null) return;
+		backpack.invalidate();
+		// Backpacks can end up in the chest slot without going through setStack,
+		// for example using "/replaceitem", so make sure they're updated as well.
+		if (backpack.isChestArmor()) BackpackWearers.add(backpack);
+	}
+	
+	@SubscribeEvent
+	public void onWorldUnload(WorldEvent.Unload event) {
+		BackpackWearers.unload(event.getWorld());
+	}
+	
+	@SubscribeEvent
+	public void onWorldTick(WorldTickEvent event) {
+		if (event.phase != Phase.END) return;
+		updateEquippedBackpacks(event.world);
+		handleDeferredDeaths(event.world);
+	}
+	
+	// Kept around so updating doesn't allocate a new function object every tick.
+	private final Predicate<BackpackCapability> _updateEquippedBackpack = this::updateEquippedBackpack;
+	
+	/** Updates the equipped backpacks of all wearers in the world. */
+	protected void updateEquippedBackpacks(World world) {
+		BackpackWearers.update(world, _updateEquippedBackpack);
+	}
+	
+	@SubscribeEvent
+	public void onServerTick(ServerTickEvent event) {
+		// All worlds share the same budget for deferred deaths each tick.
+		if (event.phase == Phase.START) { _deathQueueTime = 0; return; }
+		// Send backpack changes made during this tick.
+		BackpackCapability.sendPendingSyncs();
+		WearableBackpacks.CHANNEL.flushBackpackUpdates();
+	}
+	
+	/** Updates an equipped backpack and checks if it's been removed somehow.
+	 *  Returns false if the entity is not wearing a backpack (anymore). */
+	protected boolean updateEquippedBackpack(BackpackCapability backpack) {
+		EntityLivingBase entity = backpack.entity;
 		
 		if (backpack.isChestArmor()) {
-			if (entity instanceof EntityPlayer)
+			if (WearableBackpacks.CONFIG.debug.verifyArmorSlot.get() &&
+			    (entity instanceof EntityPlayer) && !SlotArmorBackpack.isReplaced((EntityPlayer)entity)) {
+				WearableBackpacks.LOG.warn("Chest armor slot of {} was not replaced", entity.getName());
 				SlotArmorBackpack.replace((EntityPlayer)entity);
+			}
 			
 			if (backpack.getStack().isEmpty()) {
 				// Backpack has been removed somehow.
@@ -183,15 +289,36 @@ public class ProxyCommon {
 			}
 		}
 		
-		if (!backpack.getStack().isEmpty()) {
-			backpack.getType().onEquippedTick(entity, backpack);
-			
-			if (entity.world.isRemote)
-				BackpackHelper.updateLidTicks(backpack, entity.posX, entity.posY + 1.0, entity.posZ);
+		// On the client, keep entities around even if they're
+		// not wearing a backpack. See onEntityJoinWorld.
+		if (backpack.getStack().isEmpty()) return entity.world.isRemote;
+		
+		// Non-player wearers no player is tracking go dormant and stop
+		// being updated until a player starts tracking them again.
+		// getTrackingPlayers allocates, so only check when necessary.
+		if (backpack.checkDormant && !entity.world.isRemote && !(entity instanceof EntityPlayer)) {
+			backpack.checkDormant = false;
+			if (((WorldServer)entity.world).getEntityTracker().getTrackingPlayers(entity).isEmpty()) {
+				backpack.freeze();
+				// Stays awake if its data couldn't be frozen.
+				if (backpack.isDormant()) return false;
+			}
+		}
+		
+		// Only call onEquippedTick when the backpack type asked for it.
+		long time = entity.world.getTotalWorldTime();
+		if ((backpack.nextEquippedTick < 0) || (time >= backpack.nextEquippedTick)) {
+			IBackpackType type = backpack.getType();
+			if (backpack.nextEquippedTick >= 0) type.onEquippedTick(entity, backpack);
+			int delay = type.getEquippedTickDelay(entity, backpack);
+			backpack.nextEquippedTick = ((delay >= 0) ? time + Math.max(1, delay) : Long.MAX_VALUE);
 		}
 		
+		return true;
 	}
 	
+	// Death related
+	
 	@SubscribeEvent
 	public void onLivingDeath(LivingDeathEvent event) {
 		
@@ -211,40 +338,37 @@ public class ProxyCommon {
 		boolean keepInventory = world.getGameRules().getBoolean("keepInventory");
 		if ((player != null) && keepInventory) return;
 		
+		// Deaths of other entities are handled over the next ticks, so
+		// a mob farm killing lots of backpack wearers at once doesn't
+		// cause a lag spike. The backpack is taken off the entity right
+		// away, so it isn't also dropped along with its equipment.
+		if ((player == null) && (WearableBackpacks.CONFIG.deathQueueBudget.get() > 0)) {
+			BackpackDeaths.get(world).add(entity, backpack);
+			BackpackHelper.setEquippedBackpack(entity, ItemStack.EMPTY, null);
+			return;
+		}
+		
+		handleDeath(entity, backpack);
+		
+	}
+	
+	/** Handles the death of a backpack wearer, placing
+	 *  the backpack as a block or dropping its items. */
+	protected void handleDeath(EntityLivingBase entity, IBackpack backpack) {
+		
 		// Attempt to place the backpack as a block instead of dropping the items.
 		if (WearableBackpacks.CONFIG.dropAsBlockOnDeath.get()) {
+			if (placeBackpackNear(entity.world, entity.posX, entity.posY, entity.posZ,
+			                      backpack.getStack(), entity) != null) return;
 			
-			List<BlockCoord> coords = new ArrayList<BlockCoord>();
-			for (int x = -2; x <= 2; x++)
-				for (int z = -2; z <= 2; z++)
-					coords.add(new BlockCoord(entity, x, z));
-			
-			// Try to place the backpack on the ground nearby,
-			// or look for a ground above or below to place it.
-			
-			Collections.sort(coords, new Comparator<BlockCoord>() {
-				@Override public int compare(BlockCoord o1, BlockCoord o2) {
-					if (o1.distance < o2.distance) return -1;
-					else if (o1.distance > o2.distance) return 1;
-					else return 0;
-				}
-			});
-			while (!coords.isEmpty()) {
-				Iterator<BlockCoord> iter = coords.iterator();
-				while (iter.hasNext()) {
-					BlockCoord coord = iter.next();
-					// Attempt to place and unequip the backpack at
-					// this coordinate. If successful, we're done here.
-					if (BackpackHelper.placeBackpack(world, coord, backpack.getStack(), entity))
-						return;
-					boolean replacable = world.getBlockState(coord).getBlock().isReplaceable(world, coord);
-					coord.add(0, (replacable ? -1 : 1), 0);
-					coord.moved += (replacable ? 1 : 5);
-					if ((coord.getY() <= 0) || (coord.getY() > world.getHeight()) ||
-						(coord.moved > 24 - coord.distance * 4)) iter.remove();
-				}
+			// If it couldn't be placed, store the backpack of a player
+			// so it can be recovered later, see LostBackpacks.
+			if ((entity instanceof EntityPlayer) && WearableBackpacks.CONFIG.storeLostBackpacks.get()) {
+				LostBackpacks.get(entity.world).add((EntityPlayer)entity, backpack);
+				BackpackHelper.setEquippedBackpack(entity, ItemStack.EMPTY, null);
+				LangUtils.chatMessage((EntityPlayer)entity, "backpackLost");
+				return;
 			}
-			
 		}
 		
 		// In the case of regular backpacks, this causes their contents to be dropped.
@@ -256,18 +380,154 @@ public class ProxyCommon {
 		BackpackHelper.setEquippedBackpack(entity, ItemStack.EMPTY, null);
 		
 	}
-	// Would use a method local class but "extractRangemapReplacedMain" gradle task doesn't like that.
-	private static class BlockCoord extends MutableBlockPos {
-		public double distance;
-		public int moved = 0;
-		public BlockCoord(Entity entity, int x, int z) {
-			super((int)entity.posX + x, (int)entity.posY, (int)entity.posZ + z);
-			distance = Math.sqrt(Math.pow(getX() + 0.5 - entity.posX, 2) +
-			                     Math.pow(getY() + 0.5 - entity.posY, 2) +
-			                     Math.pow(getZ() + 0.5 - entity.posZ, 2));
+	
+	/** Handles a death deferred in onLivingDeath. The entity has been removed
+	 *  since, so the backpack is placed without one. If it can't be placed, the
+	 *  backpack type's onDeath is called with the dead entity. For deaths loaded
+	 *  from the world save, the items are instead dropped as if the backpack was
+	 *  broken while placed down where the entity died. */
+	protected void handleDeath(World world, BackpackDeaths.Death death) {
+		BlockPos pos = (WearableBackpacks.CONFIG.dropAsBlockOnDeath.get()
+			? placeBackpackNear(world, death.x, death.y, death.z, death.stack, null) : null);
+		if (pos != null) {
+			// Without a wearer, placeBackpack gives the backpack new data.
+			IBackpack placed = BackpackHelper.getBackpack(world.getTileEntity(pos));
+			if (placed != null) placed.setData(death.data);
+			return;
+		}
+		
+		pos = new BlockPos(death.x, death.y, death.z);
+		TileEntityBackpack holder = new TileEntityBackpack();
+		holder.setWorld(world);
+		holder.setPos(pos);
+		holder.setStack(death.stack);
+		holder.setData(death.data);
+		IBackpackType type = BackpackHelper.getBackpackType(death.stack);
+		if (death.entity != null) {
+			// In the case of regular backpacks, this causes their contents to be dropped.
+			type.onDeath(death.entity, holder);
+			WorldUtils.dropStackFromEntity(death.entity, death.stack, 4.0F);
+		} else {
+			type.onBlockBreak(holder, holder);
+			WorldUtils.dropStackFromBlock(world, pos, death.stack);
 		}
 	}
 	
+	// Time spent on deferred deaths in all worlds during the current tick.
+	private long _deathQueueTime = 0;
+	
+	/** Handles deaths deferred in onLivingDeath, until the configured time
+	 *  budget for this tick, which is shared by all worlds, has been used up.
+	 *  At least one death is handled in each world every tick, so the backlog
+	 *  is guaranteed to shrink. Deaths in chunks which aren't loaded are kept
+	 *  for later, as anything placed or dropped there would be lost. */
+	protected void handleDeferredDeaths(World world) {
+		BackpackDeaths deaths = BackpackDeaths.get(world);
+		if (deaths.isEmpty()) return;
+		long budget = WearableBackpacks.CONFIG.deathQueueBudget.get() * 1000000L;
+		long start = System.nanoTime();
+		long end = start + budget - _deathQueueTime;
+		boolean handled = false;
+		// Each death is looked at once per tick at most.
+		for (int remaining = deaths.size(); remaining > 0; remaining--) {
+			if (handled && (budget > 0) && (System.nanoTime() >= end)) break;
+			BackpackDeaths.Death death = deaths.poll();
+			if (!world.isBlockLoaded(new BlockPos(death.x, death.y, death.z))) {
+				deaths.requeue(death);
+				continue;
+			}
+			handleDeath(world, death);
+			handled = true;
+		}
+		_deathQueueTime += System.nanoTime() - start;
+	}
+	
+	/** Tries to place a backpack on the ground near the specified position,
+	 *  looking for ground above or below in each column around it, nearest
+	 *  first. If there is none, for example over the void, attempts to place
+	 *  it right at the position instead. Returns where it was placed, or null.
+	 *  Chunks that aren't loaded are never touched if dropAsBlockLoadedOnly is set. */
+	protected BlockPos placeBackpackNear(World world, double x, double y, double z,
+	                                     ItemStack stack, EntityLivingBase entity) {
+		// Columns in chunks that aren't loaded are skipped if so configured,
+		// as looking at them would load or even generate the chunk.
+		boolean loadedOnly = WearableBackpacks.CONFIG.dropAsBlockLoadedOnly.get();
+		int blockX = MathHelper.floor(x);
+		int blockY = MathHelper.floor(y);
+		int blockZ = MathHelper.floor(z);
+		MutableBlockPos pos = new MutableBlockPos();
+		for (int i = 0; i < PLACEMENT_X.length; i++) {
+			pos.setPos(blockX + PLACEMENT_X[i], blockY, blockZ + PLACEMENT_Z[i]);
+			if (loadedOnly && !world.isBlockLoaded(pos)) continue;
+			// Only the chosen position pays for actually placing the backpack.
+			if (findGround(world, pos, PLACEMENT_DOWN[i], PLACEMENT_UP[i]) &&
+			    BackpackHelper.canPlaceBackpack(world, pos, stack, entity)) {
+				BlockPos placePos = pos.toImmutable();
+				if (BackpackHelper.commitPlaceBackpack(world, placePos, stack, entity)) return placePos;
+			}
+		}
+		BlockPos placePos = new BlockPos(blockX, blockY, blockZ);
+		if (loadedOnly && !world.isBlockLoaded(placePos)) return null;
+		return (BackpackHelper.placeBackpack(world, placePos, stack, entity) ? placePos : null);
+	}
+	
+	// Column offsets around a dying entity in which a backpack can be placed,
+	// nearest first, and how far to search down / up for ground in each column.
+	private static final int PLACEMENT_RANGE = 2;
+	static final int[] PLACEMENT_X, PLACEMENT_Z, PLACEMENT_DOWN, PLACEMENT_UP;
+	static {
+		List<int[]> offsets = new ArrayList<int[]>();
+		for (int x = -PLACEMENT_RANGE; x <= PLACEMENT_RANGE; x++)
+			for (int z = -PLACEMENT_RANGE; z <= PLACEMENT_RANGE; z++)
+				offsets.add(new int[]{ x, z });
+		offsets.sort(Comparator.comparingInt(o -> o[0] * o[0] + o[1] * o[1]));
+		
+		PLACEMENT_X = new int[offsets.size()];
+		PLACEMENT_Z = new int[offsets.size()];
+		PLACEMENT_DOWN = new int[offsets.size()];
+		PLACEMENT_UP = new int[offsets.size()];
+		for (int i = 0; i < offsets.size(); i++) {
+			int[] offset = offsets.get(i);
+			double distance = Math.sqrt(offset[0] * offset[0] + offset[1] * offset[1]);
+			PLACEMENT_X[i] = offset[0];
+			PLACEMENT_Z[i] = offset[1];
+			// Searching upwards is 5 times as "expensive" as downwards.
+			PLACEMENT_DOWN[i] = (int)(24 - distance * 4);
+			PLACEMENT_UP[i] = PLACEMENT_DOWN[i] / 5;
+		}
+	}
+	
+	/** Searches the column at the specified position for the first replaceable
+	 *  block with solid ground below it, moving down at most the specified number
+	 *  of blocks if the position is replaceable and up if it isn't. Returns if
+	 *  successful, in which case the position is set to where ground was found. */
+	static boolean findGround(World world, MutableBlockPos pos, int maxDown, int maxUp) {
+		int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+		if ((y <= 0) || (y >= world.getHeight())) return false;
+		if (isReplaceable(world, pos)) {
+			for (int i = 0; (i <= maxDown) && (y - i > 1); i++) {
+				pos.setPos(x, y - i - 1, z);
+				if (isReplaceable(world, pos)) continue;
+				boolean solid = world.getBlockState(pos).isSideSolid(world, pos, EnumFacing.UP);
+				pos.setPos(x, y - i, z);
+				return solid;
+			}
+		} else {
+			for (int i = 1; (i <= maxUp) && (y + i < world.getHeight()); i++) {
+				pos.setPos(x, y + i, z);
+				if (!isReplaceable(world, pos)) continue;
+				pos.setPos(x, y + i - 1, z);
+				boolean solid = world.getBlockState(pos).isSideSolid(world, pos, EnumFacing.UP);
+				pos.setPos(x, y + i, z);
+				return solid;
+			}
+		}
+		return false;
+	}
+	private static boolean isReplaceable(World world, BlockPos pos) {
+		return world.getBlockState(pos).getBlock().isReplaceable(world, pos);
+	}
+	
 	@SubscribeEvent
 	public void onPlayerClone(PlayerEvent.Clone event) {
 		// This comes into play when the "keepInventory" gamerule is on.
@@ -277,7 +537,7 @@ public class ProxyCommon {
 		if (originalBackpack == null) return;
 		
 		EntityPlayer player = event.getEntityPlayer();
-		IBackpack clonedBackpack = player.getCapability(IBackpack.CAPABILITY, null);
+		IBackpack clonedBackpack = BackpackHelper.getBackpackCapability(player);
 		clonedBackpack.setStack(originalBackpack.getStack());
 		clonedBackpack.setData(originalBackpack.getData());
 	}
@@ -7,10 +7,14 @@ import net.minecraftforge.fml.common.Mod.EventHandler;
 import net.minecraftforge.fml.common.Mod.Instance;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppedEvent;
 import net.minecraftforge.fml.common.SidedProxy;
 
 import net.mcft.copy.backpacks.config.BackpacksConfig;
+import net.mcft.copy.backpacks.misc.CommandBackpack;
 import net.mcft.copy.backpacks.network.BackpacksChannel;
+import net.mcft.copy.backpacks.network.MessageSyncSettings;
 
 // TODO: Add achievement(s)! <3
 
@@ -54,4 +58,14 @@ public class WearableBackpacks {
 		BackpacksContent.initRecipes();
 	}
 	
+	@EventHandler
+	public void serverStarting(FMLServerStartingEvent event) {
+		event.registerServerCommand(new CommandBackpack());
+	}
+	
+	@EventHandler
+	public void serverStopped(FMLServerStoppedEvent event) {
+		MessageSyncSettings.invalidate();
+	}
+	
 }
@@ -1,5 +1,9 @@
 package net.mcft.copy.backpacks.api;
 
+import java.util.Map;
+
+import com.google.common.collect.MapMaker;
+
 import net.minecraft.util.EnumHand;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -42,15 +46,35 @@ public final class BackpackHelper {
 	
 	public static Logger LOG = LogManager.getLogger("wearablebackpacks:api");
 	
+	// Backpack capabilities of entities, so they can be looked up without
+	// going through every capability provider attached to the entity.
+	// Values reference their entity, so they must be weak as well. They
+	// are kept alive by the entity's capabilities for as long as it is.
+	private static final Map<Entity, IBackpack> _entityBackpacks = new MapMaker().weakKeys().weakValues().makeMap();
+	
 	
 	/** Returns the entity's backpack capability, or null if the
 	 *  entity either can't or currently doesn't have one equipped. */
 	public static IBackpack getBackpack(Entity entity) {
-		if (entity == null) return null;
-		IBackpack backpack = entity.getCapability(IBackpack.CAPABILITY, null);
+		IBackpack backpack = getBackpackCapability(entity);
 		return (((backpack != null) && !backpack.getStack().isEmpty()) ? backpack : null);
 	}
 	
+	/** Returns the entity's backpack capability, or null if the entity can't
+	 *  wear backpacks. Unlike {@link #getBackpack(Entity)}, also returns the
+	 *  capability if the entity doesn't currently have a backpack equipped. */
+	public static IBackpack getBackpackCapability(Entity entity) {
+		if ((entity == null) || !BackpackRegistry.canEntityWearBackpacks(entity)) return null;
+		IBackpack backpack = _entityBackpacks.get(entity);
+		return ((backpack != null) ? backpack : entity.getCapability(IBackpack.CAPABILITY, null));
+	}
+	
+	/** Registers the backpack capability of an entity so it can be looked up directly
+	 *  by {@link #getBackpackCapability}. Called when the capability is created. */
+	public static void registerBackpackCapability(Entity entity, IBackpack backpack) {
+		_entityBackpacks.put(entity, backpack);
+	}
+	
 	/** Returns the tile entity's backpack capability. */
 	public static IBackpack getBackpack(TileEntity entity) {
 		return ((entity != null) ? entity.getCapability(IBackpack.CAPABILITY, null) : null);
@@ -81,7 +105,7 @@ public final class BackpackHelper {
 		if (!stack.isEmpty() && (backpackType == null))
 			throw new IllegalArgumentException("Backpack item isn't an IBackpackType.");
 		
-		IBackpack backpack = entity.getCapability(IBackpack.CAPABILITY, null);
+		IBackpack backpack = getBackpackCapability(entity);
 		backpack.setStack(stack);
 		backpack.setData(backpackData);
 	}
@@ -120,22 +144,37 @@ public final class BackpackHelper {
 	}
 	
 	/** Attempts to place down a backpack, unequipping it
-	 *  if the specified entity is currently wearing it. */
+	 *  if the specified entity is currently wearing it.
+	 *  The entity may be null if there is no one placing it. */
 	public static boolean placeBackpack(World world, BlockPos pos,
 	                                    ItemStack stack, EntityLivingBase entity) {
-		
+		return (canPlaceBackpack(world, pos, stack, entity) &&
+		        commitPlaceBackpack(world, pos, stack, entity));
+	}
+	
+	/** Returns if a backpack could be placed down at the specified position,
+	 *  without changing anything. Cheap enough to test many positions with,
+	 *  before calling {@link #commitPlaceBackpack} for the chosen one. */
+	public static boolean canPlaceBackpack(World world, BlockPos pos,
+	                                       ItemStack stack, EntityLivingBase entity) {
 		EntityPlayer player = ((entity instanceof EntityPlayer) ? (EntityPlayer)entity : null);
 		if ((player != null) && !player.canPlayerEdit(pos, EnumFacing.UP, stack))
 			return false;
 		// TODO: Should permission things be handled outside the API method?
 		// TODO: For mobs, use mob griefing gamerule?
 		
+		return world.mayPlace(getBlock(stack), pos, false, EnumFacing.UP, null);
+	}
+	
+	/** Places down a backpack without checking {@link #canPlaceBackpack}
+	 *  first, unequipping it if the specified entity is currently wearing it.
+	 *  Returns false if the block couldn't be set in the world after all. */
+	public static boolean commitPlaceBackpack(World world, BlockPos pos,
+	                                          ItemStack stack, EntityLivingBase entity) {
+		
+		EntityPlayer player = ((entity instanceof EntityPlayer) ? (EntityPlayer)entity : null);
 		Item item = stack.getItem();
-		// Would use this instead, but gotta avoid depending on the rest of WearableBackpacks.
-		//Block block = MiscUtils.getBlockFromItem(item);
-		Block block = Block.REGISTRY.getObject(item.getRegistryName());
-		if (!world.mayPlace(block, pos, false, EnumFacing.UP, null))
-			return false;
+		Block block = getBlock(stack);
 		
 		// Actually go ahead and try to set the block in the world.
 		IBlockState state = block.getStateForPlacement(
@@ -154,7 +193,7 @@ public final class BackpackHelper {
 		IBackpack placedBackpack = BackpackHelper.getBackpack(tileEntity);
 		if (placedBackpack == null) return true;
 		
-		IBackpack carrierBackpack = BackpackHelper.getBackpack(player);
+		IBackpack carrierBackpack = BackpackHelper.getBackpack(entity);
 		boolean isEquipped = ((carrierBackpack != null) && (carrierBackpack.getStack() == stack));
 		
 		ItemStack stackOrig = stack;
@@ -192,6 +231,12 @@ public final class BackpackHelper {
 		
 	}
 	
+	private static Block getBlock(ItemStack stack) {
+		// Would use this instead, but gotta avoid depending on the rest of WearableBackpacks.
+		//return MiscUtils.getBlockFromItem(stack.getItem());
+		return Block.REGISTRY.getObject(stack.getItem().getRegistryName());
+	}
+	
 	/** Updates the lid ticks for some backpack properties.
 	 *  Plays a sound when the backpack is being opened or closed. */
 	@SideOnly(Side.CLIENT)
@@ -1,5 +1,6 @@
 package net.mcft.copy.backpacks.api;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,10 +16,18 @@ public final class BackpackRegistry {
 	public static final Map<Class<? extends EntityLivingBase>, Map<Item, Double>> entities =
 			new HashMap<Class<? extends EntityLivingBase>, Map<Item, Double>>();
 	
+	/** Returned by the resolver for entity classes that can't wear backpacks. */
+	private static final Map<Item, Double> CANT_WEAR = Collections.unmodifiableMap(new HashMap<Item, Double>());
+	/** Players can always wear backpacks, but don't spawn with any. */
+	private static final Map<Item, Double> PLAYER = Collections.unmodifiableMap(new HashMap<Item, Double>());
+	
+	/** Caches the resolved entry of each entity class. Replaced whenever an entity is registered. */
+	private static volatile ClassValue<Map<Item, Double>> _resolved = createResolver();
+	
 	/** Registers an entity as possible backpack carrier, meaning they'll get
 	 *  constructed with backpack properties. Additionally controls how backpacks
-	 *  are spawned on entities. Only registers the exact class, subclasses have
-	 *  to be registered separately. */
+	 *  are spawned on entities. Also applies to subclasses of the entity class,
+	 *  unless they're registered themselves. */
 	public static void registerBackpackEntity(Class<? extends EntityLivingBase> entityClass,
 	                                          Object... backpackChancePairs) {
 		Map<Item, Double> entry = entities.get(entityClass);
@@ -38,11 +47,36 @@ public final class BackpackRegistry {
 			if (chance > 0) entry.put(item, chance);
 			else entry.remove(item);
 		}
+		_resolved = createResolver();
 	}
 	
 	/** Returns if the entity can wear backpacks. */
 	public static boolean canEntityWearBackpacks(Entity entity) {
-		return ((entity instanceof EntityPlayer) ? true : entities.containsKey(entity.getClass()));
+		return ((entity != null) && canEntityWearBackpacks(entity.getClass()));
+	}
+	/** Returns if entities of this class can wear backpacks. */
+	public static boolean canEntityWearBackpacks(Class<? extends Entity> entityClass) {
+		return (_resolved.get(entityClass) != CANT_WEAR);
+	}
+	
+	/** Returns the backpack spawn chances which apply to the entity class,
+	 *  taken from the closest registered class in its hierarchy. Returns
+	 *  null if entities of this class can't wear backpacks. */
+	public static Map<Item, Double> getBackpackChances(Class<? extends Entity> entityClass) {
+		Map<Item, Double> chances = _resolved.get(entityClass);
+		return ((chances != CANT_WEAR) ? chances : null);
+	}
+	
+	private static ClassValue<Map<Item, Double>> createResolver() {
+		return new ClassValue<Map<Item, Double>>() {
+			@Override protected Map<Item, Double> computeValue(Class<?> type) {
+				for (Class<?> c = type; (c != null) && EntityLivingBase.class.isAssignableFrom(c); c = c.getSuperclass()) {
+					Map<Item, Double> entry = entities.get(c);
+					if (entry != null) return Collections.unmodifiableMap(entry);
+				}
+				return (EntityPlayer.class.isAssignableFrom(type) ? PLAYER : CANT_WEAR);
+			}
+		};
 	}
 	
 }
@@ -39,13 +39,25 @@ public interface IBackpackType {
 	 *  and this is also called on the client side. */
 	void onEquippedInteract(EntityPlayer player, EntityLivingBase target, IBackpack backpack);
 	
-	/** Called every game tick when the backpack is equipped, regardless of where. */
+	/** Called while the backpack is equipped, regardless of where. How often
+	 *  this is called is controlled by {@link #getEquippedTickDelay}. */
 	void onEquippedTick(EntityLivingBase entity, IBackpack backpack);
 	
+	/** Returns the number of ticks until {@link #onEquippedTick} should be called next,
+	 *  or a negative value if it doesn't need to be called (anymore). Called when the
+	 *  backpack is first updated after being equipped or loaded, and after each call
+	 *  to onEquippedTick. By default, onEquippedTick is called every tick. */
+	default int getEquippedTickDelay(EntityLivingBase entity, IBackpack backpack) { return 1; }
+	
 	/** Called before the entity wearing this backpack dies and drops the backpack item.
 	 *  <p>
-	 *  If either the "general.dropAsBlockOnDeath" config setting or "keepInventory"
-	 *  gamerule are enabled, this method won't be called. */
+	 *  If the "keepInventory" gamerule is enabled, this method won't be called. Neither
+	 *  will it if the "general.dropAsBlockOnDeath" config setting is enabled and the
+	 *  backpack is successfully placed as a block.
+	 *  <p>
+	 *  For entities other than players, this may be called a few ticks after the entity
+	 *  died, which is controlled by the "general.deathQueueBudget" config setting. In that
+	 *  case the entity has already been removed and the backpack is no longer equipped. */
 	void onDeath(EntityLivingBase entity, IBackpack backpack);
 	
 	/** Called when the backpack breaks while being equipped. */
@@ -103,8 +103,9 @@ public class BlockBackpack extends BlockContainer {
 	public void onBlockPlacedBy(World worldIn, BlockPos pos, IBlockState state,
 	                            EntityLivingBase placer, ItemStack stack) {
 		// Set the facing value of the backpack when placed.
+		// Placer is null for backpacks placed without a wearer.
 		TileEntity tileEntity = worldIn.getTileEntity(pos);
-		if (tileEntity instanceof TileEntityBackpack)
+		if ((tileEntity instanceof TileEntityBackpack) && (placer != null))
 			((TileEntityBackpack)tileEntity).facing = placer.getHorizontalFacing();
 	}
 	
@@ -7,17 +7,17 @@ import net.minecraft.network.NetworkManager;
 import net.minecraft.network.play.server.SPacketUpdateTileEntity;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
-import net.minecraft.util.ITickable;
 
 import net.minecraftforge.common.capabilities.Capability;
 
 import net.mcft.copy.backpacks.api.BackpackHelper;
 import net.mcft.copy.backpacks.api.IBackpack;
 import net.mcft.copy.backpacks.api.IBackpackData;
+import net.mcft.copy.backpacks.client.LidAnimations;
 import net.mcft.copy.backpacks.misc.util.NbtUtils;
 
 // TODO: Implement ItemStackHandler (only for bottom side)?
-public class TileEntityBackpack extends TileEntity implements ITickable, IBackpack {
+public class TileEntityBackpack extends TileEntity implements IBackpack {
 	
 	public static final String TAG_STACK  = "stack";
 	public static final String TAG_DATA   = "data";
@@ -31,17 +31,13 @@ public class TileEntityBackpack extends TileEntity implements ITickable, IBackpa
 	
 	public EnumFacing facing = EnumFacing.NORTH;
 	
-	@Override
-	public void update() {
-		if (world.isRemote)
-			BackpackHelper.updateLidTicks(this,
-				pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5);
-	}
-	
 	@Override
 	public boolean receiveClientEvent(int id, int type) {
-		if (id == 0) { _playersUsing = type; return true; }
-		return false;
+		if (id != 0) return false;
+		_playersUsing = type;
+		// Lid ticks are only updated while the lid is moving.
+		if (world.isRemote) LidAnimations.add(this);
+		return true;
 	}
 	
 	// Reading/writing, loading/saving, update packets
@@ -0,0 +1,75 @@
+package net.mcft.copy.backpacks.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import net.mcft.copy.backpacks.api.BackpackHelper;
+import net.mcft.copy.backpacks.api.IBackpack;
+import net.mcft.copy.backpacks.block.entity.TileEntityBackpack;
+import net.mcft.copy.backpacks.misc.BackpackCapability;
+
+/** Keeps track of backpacks whose lid is currently opening or closing, so
+ *  only those have their lid ticks updated. Backpacks are added when the
+ *  number of players using them changes, and removed once the lid settles. */
+@SideOnly(Side.CLIENT)
+public final class LidAnimations {
+	
+	private LidAnimations() {  }
+	
+	
+	private static final List<BackpackCapability> _equipped = new ArrayList<BackpackCapability>();
+	private static final List<TileEntityBackpack> _placed = new ArrayList<TileEntityBackpack>();
+	
+	/** Starts animating the lid of an equipped backpack. */
+	public static void add(BackpackCapability backpack) {
+		if (!_equipped.contains(backpack)) _equipped.add(backpack);
+	}
+	/** Starts animating the lid of a placed backpack. */
+	public static void add(TileEntityBackpack backpack) {
+		if (!_placed.contains(backpack)) _placed.add(backpack);
+	}
+	
+	/** Updates the lid ticks of all animating backpacks in
+	 *  the specified world, removing those that have settled. */
+	public static void update(World world) {
+		int kept = 0;
+		for (int i = 0; i < _equipped.size(); i++) {
+			BackpackCapability backpack = _equipped.get(i);
+			EntityLivingBase entity = backpack.entity;
+			if (entity.isDead || (entity.world != world)) continue;
+			BackpackHelper.updateLidTicks(backpack, entity.posX, entity.posY + 1.0, entity.posZ);
+			if (!isSettled(backpack)) _equipped.set(kept++, backpack);
+		}
+		trim(_equipped, kept);
+		
+		kept = 0;
+		for (int i = 0; i < _placed.size(); i++) {
+			TileEntityBackpack backpack = _placed.get(i);
+			if (backpack.isInvalid() || (backpack.getWorld() != world)) continue;
+			BlockPos pos = backpack.getPos();
+			BackpackHelper.updateLidTicks(backpack, pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5);
+			if (!isSettled(backpack)) _placed.set(kept++, backpack);
+		}
+		trim(_placed, kept);
+	}
+	
+	/** Returns if the backpack's lid is fully opened or closed and not moving. */
+	private static boolean isSettled(IBackpack backpack) {
+		int lidTicks = backpack.getLidTicks();
+		if (lidTicks != backpack.getPrevLidTicks()) return false;
+		if (backpack.getPlayersUsing() <= 0) return (lidTicks <= 0);
+		return ((backpack.getType() == null) || (lidTicks >= backpack.getType().getLidMaxTicks()));
+	}
+	
+	private static void trim(List<?> list, int size) {
+		while (list.size() > size) list.remove(list.size() - 1);
+	}
+	
+}
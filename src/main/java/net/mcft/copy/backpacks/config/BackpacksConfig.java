@@ -12,6 +12,7 @@ import net.minecraftforge.common.config.Configuration;
 import net.minecraftforge.fml.client.event.ConfigChangedEvent.OnConfigChangedEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedInEvent;
+import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
 import net.minecraftforge.fml.common.network.FMLNetworkEvent.ClientDisconnectionFromServerEvent;
 
 import net.mcft.copy.backpacks.BackpacksContent;
@@ -37,6 +38,20 @@ public class BackpacksConfig extends Configuration {
 	public final Setting<Boolean> dropAsBlockOnDeath = new SettingBoolean(true)
 		.setComment("If enabled, places equipped backpacks as a block on death, instead of scattering the items all around. Default: true.");
 	
+	public final Setting<Boolean> dropAsBlockLoadedOnly = new SettingBoolean(true).setRequired(dropAsBlockOnDeath)
+		.setComment("If enabled, only looks for a spot to place backpacks on death in chunks that are already loaded,\n" +
+		            "instead of loading or generating neighboring chunks during the death event. Default: true.");
+	
+	public final Setting<Boolean> storeLostBackpacks = new SettingBoolean(false).setRequired(dropAsBlockOnDeath)
+		.setComment("If enabled, backpacks of players which can't be placed as a block on death are stored away instead\n" +
+		            "of scattering their items. They're returned on respawn, or using the \"/backpack\" command. Default: false.");
+	
+	public final Setting<Integer> deathQueueBudget = new SettingInteger(2).setValidRange(0, 50)
+		.setComment("Milliseconds per tick, shared by all dimensions, spent on placing or dropping backpacks of\n" +
+		            "entities other than players which died, spreading mass deaths (like in mob farms) over multiple\n" +
+		            "ticks. At least one is handled in each dimension every tick. Set to 0 to handle them immediately\n" +
+		            "on death instead. Default: 2.");
+	
 	// ==[ BACKPACK ]==
 	
 	public final BackpackCategory backpack = new BackpackCategory();
@@ -57,6 +72,17 @@ public class BackpacksConfig extends Configuration {
 		
 	}
 	
+	// ==[ DEBUG ]==
+	
+	public final DebugCategory debug = new DebugCategory();
+	public static class DebugCategory {
+		
+		public final Setting<Boolean> verifyArmorSlot = new SettingBoolean(false)
+			.setComment("If enabled, checks every tick that players wearing a backpack still have the chest armor slot\n" +
+			            "which prevents it from being taken out, and logs a warning if it had to be replaced. Default: false.");
+		
+	}
+	
 	
 	private Map<String, Setting<?>> _settings = new LinkedHashMap<String, Setting<?>>();
 	
@@ -158,6 +184,7 @@ public class BackpacksConfig extends Configuration {
 	public void onConfigChanged(OnConfigChangedEvent event) {
 		if (!event.getModID().equals(WearableBackpacks.MOD_ID)) return;
 		getSettings().forEach(Setting::onPropertyChanged);
+		MessageSyncSettings.invalidate();
 		// Resyncronize the settings to all players.
 		if (event.isWorldRunning())
 			WearableBackpacks.CHANNEL.sendToAll(MessageSyncSettings.create());
@@ -167,7 +194,12 @@ public class BackpacksConfig extends Configuration {
 	@SubscribeEvent
 	public void onPlayerLogin(PlayerLoggedInEvent event) {
 		// Synchronize settings with players when they join the world / server.
-		WearableBackpacks.CHANNEL.sendTo(MessageSyncSettings.create(), event.player);
+		WearableBackpacks.CHANNEL.sendTo(MessageSyncSettings.create(event.player), event.player);
+	}
+	
+	@SubscribeEvent
+	public void onPlayerLogout(PlayerLoggedOutEvent event) {
+		MessageSyncSettings.playerLeft(event.player);
 	}
 	
 	@SubscribeEvent
@@ -7,7 +7,6 @@ import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.inventory.Container;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.NBTTagCompound;
 
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
@@ -23,10 +22,13 @@ import net.mcft.copy.backpacks.network.MessageOpenGui;
 @ChestContainer
 public abstract class ContainerBackpack extends Container {
 	
+	// Used by the legacy layout of MessageOpenGui.
 	public static final String TAG_SIZE      = "size";
 	public static final String TAG_TITLE     = "title";
 	public static final String TAG_LOCALIZED = "localized";
 	
+	public static final String DEFAULT_TITLE = "container.wearablebackpacks.backpack";
+	
 	
 	public final EntityPlayer player;
 	public final IBackpack backpack;
@@ -48,24 +50,23 @@ public abstract class ContainerBackpack extends Container {
 		items = data.items;
 		
 		ItemStack stack = backpack.getStack();
-		title = (stack.hasDisplayName() ? stack.getDisplayName()
-			: "container.wearablebackpacks.backpack");
+		title = (stack.hasDisplayName() ? stack.getDisplayName() : DEFAULT_TITLE);
 		titleLocalized = stack.hasDisplayName();
 		
 		setupSlots();
 	}
 	
 	@SideOnly(Side.CLIENT)
-	public ContainerBackpack(EntityPlayer player, NBTTagCompound data) {
+	public ContainerBackpack(EntityPlayer player, BackpackSize size, String title, boolean titleLocalized) {
 		this.player   = player;
 		this.backpack = null;
 		this.data     = null;
 		
-		size  = BackpackSize.parse(data.getTag(TAG_SIZE));
+		this.size = size;
 		items = new ItemStackHandler(size.getColumns() * size.getRows());
 		
-		title = data.getString(TAG_TITLE);
-		titleLocalized = data.getBoolean(TAG_LOCALIZED);
+		this.title = title;
+		this.titleLocalized = titleLocalized;
 		
 		setupSlots();
 	}
@@ -145,13 +146,6 @@ public abstract class ContainerBackpack extends Container {
 				xOffset + x * 18, yOffset));
 	}
 	
-	
-	public void writeToNBT(NBTTagCompound compound) {
-		compound.setTag(TAG_SIZE, size.serializeNBT());
-		compound.setString(TAG_TITLE, title);
-		compound.setBoolean(TAG_LOCALIZED, titleLocalized);
-	}
-	
 	// Container overrides
 	
 	@Override
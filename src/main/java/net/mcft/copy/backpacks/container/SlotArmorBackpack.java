@@ -22,8 +22,15 @@ public class SlotArmorBackpack extends Slot {
 		super(inventory, slot, x, y);
 	}
 	
+	/** Returns if the player's chest armor slot has been replaced. */
+	public static boolean isReplaced(EntityPlayer player) {
+		return (player.inventoryContainer.getSlot(6) instanceof SlotArmorBackpack);
+	}
+	
 	/** Replaces the chest armor slot of the player with one that
-	 *  prevents backpacks from being taken out, if necessary. */
+	 *  prevents backpacks from being taken out, if necessary.
+	 *  Only needs to be called once for each new inventoryContainer,
+	 *  which is created along with the player entity. */
 	public static void replace(EntityPlayer player) {
 		Slot slot = player.inventoryContainer.getSlot(6);
 		if (slot instanceof SlotArmorBackpack) return;
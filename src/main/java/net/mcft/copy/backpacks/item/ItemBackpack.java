@@ -160,6 +160,9 @@ public class ItemBackpack extends Item implements IBackpackType, IDyeableItem, I
 	@Override
 	public void onEquippedTick(EntityLivingBase entity, IBackpack backpack) {  }
 	
+	@Override
+	public int getEquippedTickDelay(EntityLivingBase entity, IBackpack backpack) { return -1; }
+	
 	@Override
 	public void onDeath(EntityLivingBase entity, IBackpack backpack) {
 		if (!(backpack.getData() instanceof BackpackDataItems)) return;
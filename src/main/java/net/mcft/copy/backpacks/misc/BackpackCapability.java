@@ -1,13 +1,21 @@
 package net.mcft.copy.backpacks.misc;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.inventory.EntityEquipmentSlot;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompressedStreamTools;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.World;
 
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.capabilities.ICapabilitySerializable;
@@ -36,7 +44,7 @@ public class BackpackCapability implements IBackpack {
 	public final EntityLivingBase entity;
 	
 	public ItemStack stack = ItemStack.EMPTY;
-	public IBackpackData data = null;
+	public IBackpackData data = null; // Null while dormant, see freeze.
 	public int playersUsing = 0;
 	public int lidTicks = 0;
 	public int prevLidTicks = 0;
@@ -44,22 +52,63 @@ public class BackpackCapability implements IBackpack {
 	// This is also null if the backpack is not equipped to the chestplate slot.
 	public IBackpackType lastType = null;
 	
+	// World whose BackpackWearers this entity is currently part of, if any.
+	public World wearerWorld = null;
+	// World time at which the backpack type's onEquippedTick is next called.
+	// Negative if not yet scheduled, see IBackpackType.getEquippedTickDelay.
+	// Reset when the stack is set or the backpack type changes, see validate.
+	public long nextEquippedTick = -1;
+	
+	// Cached results of isChestArmor, getStack and getType. The stack is null
+	// when the cache is invalid, see invalidate. _cachedTime is only used on the
+	// client, where Vanilla syncs equipment without firing any event.
+	private boolean _cachedChestArmor;
+	private ItemStack _cachedStack = null;
+	private IBackpackType _cachedType;
+	private long _cachedTime;
+	
+	// Set while the backpack is dormant, even if it had no data to freeze.
+	private boolean _dormant = false;
+	// Compressed backpack data while the backpack is dormant.
+	private byte[] _frozenData = null;
+	// Set when the entity might not be tracked by any player anymore.
+	public boolean checkDormant = true;
+	
+	// Server-side capabilities with changes which still need to be sent, see sendPendingSyncs.
+	private static final List<BackpackCapability> _pendingSyncs = new ArrayList<BackpackCapability>();
+	private boolean _syncPending = false;
+	private boolean _syncContainer = false;
+	private boolean _syncStack = false;
+	
 	public BackpackCapability(EntityLivingBase entity) { this.entity = entity; }
 	
 	/** Returns if the entity is wearing the backpack in the chest armor slot. */
-	public boolean isChestArmor() {
-		return ((lastType != null) || (BackpackHelper.getBackpackType(
-			entity.getItemStackFromSlot(EntityEquipmentSlot.CHEST)) != null));
+	public boolean isChestArmor() { validate(); return _cachedChestArmor; }
+	
+	/** Causes the equipped stack and backpack type to be looked up again next
+	 *  time they're requested. Needs to be called when the entity's chest armor,
+	 *  or the stack or lastType fields are changed from outside of this class. */
+	public void invalidate() { _cachedStack = null; }
+	
+	private void validate() {
+		// On the client, cached values are only used for the remainder of the current tick.
+		if ((_cachedStack != null) && (!entity.world.isRemote ||
+		    (_cachedTime == entity.world.getTotalWorldTime()))) return;
+		ItemStack chestArmor = entity.getItemStackFromSlot(EntityEquipmentSlot.CHEST);
+		IBackpackType chestType = BackpackHelper.getBackpackType(chestArmor);
+		_cachedChestArmor = ((lastType != null) || (chestType != null));
+		_cachedStack = (!stack.isEmpty() ? stack : ((chestType != null) ? chestArmor : ItemStack.EMPTY));
+		IBackpackType type = ((lastType != null) ? lastType : BackpackHelper.getBackpackType(_cachedStack));
+		// The previous type's schedule doesn't apply to a different type.
+		if (type != _cachedType) nextEquippedTick = -1;
+		_cachedType = type;
+		_cachedTime = entity.world.getTotalWorldTime();
 	}
 	
 	// IBackpack implementation
 	
 	@Override
-	public ItemStack getStack() {
-		if (!stack.isEmpty()) return stack;
-		ItemStack chestArmor = entity.getItemStackFromSlot(EntityEquipmentSlot.CHEST);
-		return ((BackpackHelper.getBackpackType(chestArmor) != null) ? chestArmor : ItemStack.EMPTY);
-	}
+	public ItemStack getStack() { validate(); return _cachedStack; }
 	
 	@Override
 	public void setStack(ItemStack value) {
@@ -83,22 +132,116 @@ public class BackpackCapability implements IBackpack {
 			stack = value;
 			lastType = null;
 		}
+		invalidate();
+		nextEquippedTick = -1;
+		
+		// Make sure the entity gets its equipped backpack updated.
+		if (!value.isEmpty()) BackpackWearers.add(this);
 		
 		if (!entity.world.isRemote) {
 			// If chest armor was changed and this is a player, send the updated stack.
-			if (chestArmorChanged && (entity instanceof EntityPlayer))
-				((EntityPlayer)entity).inventoryContainer.detectAndSendChanges();
+			if (chestArmorChanged && (entity instanceof EntityPlayer)) _syncContainer = true;
 			// If backpack capability stack was changed, send it to everyone who can see the entity.
-			if (stack != lastStack)
-				WearableBackpacks.CHANNEL.sendToAllTracking(
-					MessageBackpackUpdate.stack(entity, stack), entity, true);
+			if (stack != lastStack) _syncStack = true;
+			// Changes are sent once at the end of the tick, see sendPendingSyncs.
+			if ((_syncContainer || _syncStack) && !_syncPending) {
+				_pendingSyncs.add(this);
+				_syncPending = true;
+			}
+		}
+	}
+	
+	/** Sends the changes of all backpack capabilities modified this tick to
+	 *  the players who need to know about them. This way, changing the same
+	 *  backpack multiple times in one tick only causes a single update to be
+	 *  sent. Called at the end of each server tick. */
+	public static void sendPendingSyncs() {
+		for (int i = 0; i < _pendingSyncs.size(); i++) {
+			BackpackCapability backpack = _pendingSyncs.get(i);
+			EntityLivingBase entity = backpack.entity;
+			if (backpack._syncContainer)
+				((EntityPlayer)entity).inventoryContainer.detectAndSendChanges();
+			if (backpack._syncStack) {
+				// Only the wearer receives the full stack, others just what's needed to render it.
+				WearableBackpacks.CHANNEL.queueBackpackUpdateToAllTracking(MessageBackpackUpdate.render(
+					entity, backpack.stack, (backpack.playersUsing > 0)), entity, false);
+				if (entity instanceof EntityPlayer) WearableBackpacks.CHANNEL.queueBackpackUpdate(
+					MessageBackpackUpdate.stack(entity, backpack.stack), (EntityPlayer)entity);
+			}
+			backpack._syncContainer = false;
+			backpack._syncStack = false;
+			backpack._syncPending = false;
 		}
+		_pendingSyncs.clear();
 	}
 	
 	@Override
-	public IBackpackData getData() { return data; }
+	public IBackpackData getData() { thaw(); return data; }
 	@Override
-	public void setData(IBackpackData value) { data = value; }
+	public void setData(IBackpackData value) { _dormant = false; _frozenData = null; data = value; }
+	
+	// Dormant state
+	
+	/** Returns if the backpack is dormant, meaning its data, if any, is frozen. */
+	public boolean isDormant() { return _dormant; }
+	
+	/** Makes the backpack dormant, storing its data in compressed form until
+	 *  it's needed again. Used for entities no player is currently tracking. */
+	public void freeze() {
+		if (_dormant) return;
+		_dormant = true;
+		if (data == null) return;
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		try { CompressedStreamTools.writeCompressed(NbtUtils.createCompound(TAG_DATA, data.serializeNBT()), stream); }
+		catch (IOException ex) {
+			// Stay awake, keeping the data as it is.
+			WearableBackpacks.LOG.error("Error trying to freeze backpack data", ex);
+			_dormant = false;
+			return;
+		}
+		_frozenData = stream.toByteArray();
+		data = null;
+	}
+	
+	/** Wakes up a dormant backpack, restoring its data from compressed form.
+	 *  Dormant wearers were removed from BackpackWearers, so it's added back,
+	 *  and checks again whether it should stay awake on its next update. */
+	public void thaw() {
+		if (!_dormant) return;
+		IBackpackType type = null;
+		if (_frozenData != null) {
+			type = getType();
+			// Stay dormant, so the frozen data isn't lost.
+			if (type == null) {
+				WearableBackpacks.LOG.error("Backpack type was null when waking up dormant backpack");
+				return;
+			}
+		}
+		_dormant = false;
+		checkDormant = true;
+		if (!getStack().isEmpty()) BackpackWearers.add(this);
+		if (_frozenData == null) return;
+		NBTBase dataTag = readFrozenData();
+		_frozenData = null;
+		data = type.createBackpackData(getStack());
+		if ((data != null) && (dataTag != null))
+			data.deserializeNBT(dataTag);
+	}
+	
+	/** Returns the serialized backpack data, without waking up a dormant backpack. */
+	public NBTBase serializeData() {
+		return ((_frozenData != null) ? readFrozenData()
+			: ((data != null) ? data.serializeNBT() : null));
+	}
+	
+	private NBTBase readFrozenData() {
+		try { return CompressedStreamTools.readCompressed(
+			new ByteArrayInputStream(_frozenData)).getTag(TAG_DATA); }
+		catch (IOException ex) {
+			WearableBackpacks.LOG.error("Error trying to read frozen backpack data", ex);
+			return null;
+		}
+	}
 	
 	@Override
 	public int getPlayersUsing() { return playersUsing; }
@@ -108,7 +251,7 @@ public class BackpackCapability implements IBackpack {
 		// using changed from 0 to non-zero or the other way around),
 		// send an update to anyone who can see this entity.
 		if ((value > 0) != (playersUsing > 0))
-			WearableBackpacks.CHANNEL.sendToAllTracking(
+			WearableBackpacks.CHANNEL.queueBackpackUpdateToAllTracking(
 				MessageBackpackUpdate.open(entity, (value > 0)), entity, true);
 		playersUsing = value;
 	}
@@ -121,8 +264,7 @@ public class BackpackCapability implements IBackpack {
 	public void setLidTicks(int value) { prevLidTicks = lidTicks; lidTicks = value; }
 	
 	@Override
-	public IBackpackType getType() { return (lastType != null)
-		? lastType : BackpackHelper.getBackpackType(getStack()); }
+	public IBackpackType getType() { validate(); return _cachedType; }
 	
 	// Capabilities related implementations
 	
@@ -130,7 +272,10 @@ public class BackpackCapability implements IBackpack {
 		
 		final BackpackCapability backpack;
 		
-		public Provider(EntityLivingBase entity) { backpack = new BackpackCapability(entity); }
+		public Provider(EntityLivingBase entity) {
+			backpack = new BackpackCapability(entity);
+			BackpackHelper.registerBackpackCapability(entity, backpack);
+		}
 		
 		// ICapabilityProvider implementation
 		
@@ -150,6 +295,7 @@ public class BackpackCapability implements IBackpack {
 		@Override
 		public void deserializeNBT(NBTTagCompound compound) {
 			backpack.stack = NbtUtils.readItem(compound.getCompoundTag(TAG_STACK));
+			backpack.invalidate();
 			
 			IBackpackType type;
 			if (backpack.stack.isEmpty()) {
@@ -159,6 +305,7 @@ public class BackpackCapability implements IBackpack {
 				// the chest armor slot, which has not yet been loaded. :'(
 				String id = compound.getString(TAG_TYPE);
 				backpack.lastType = type = BackpackHelper.getBackpackType(MiscUtils.getItemFromName(id));
+				backpack.invalidate();
 				if (type == null) return;
 			} else type = BackpackHelper.getBackpackType(backpack.stack);
 			
@@ -179,7 +326,7 @@ public class BackpackCapability implements IBackpack {
 				TAG_STACK, ((!backpack.stack.isEmpty()) ? backpack.stack.serializeNBT() : null),
 				// If the backpack is stored in the chest armor slot, we need to save the item. See deserializeNBT.
 				TAG_TYPE, (backpack.isChestArmor() ? backpack.getStack().getItem().getRegistryName().toString() : null),
-				TAG_DATA, ((backpack.data != null) ? backpack.data.serializeNBT() : null));
+				TAG_DATA, backpack.serializeData());
 		}
 		
 	}
@@ -189,10 +336,10 @@ public class BackpackCapability implements IBackpack {
 		@Override
 		public NBTBase writeNBT(Capability<IBackpack> capability, IBackpack instance, EnumFacing side) {
 			BackpackCapability backpack = (BackpackCapability)instance;
-			return ((backpack.stack.isEmpty()) && (backpack.data == null)) ? null
+			return ((backpack.stack.isEmpty()) && (backpack.data == null) && !backpack.isDormant()) ? null
 				: NbtUtils.createCompound(
 					TAG_STACK, ((!backpack.stack.isEmpty()) ? backpack.stack.serializeNBT() : null),
-					TAG_DATA, ((backpack.data != null) ? backpack.data.serializeNBT() : null));
+					TAG_DATA, backpack.serializeData());
 		}
 		
 		@Override
@@ -209,6 +356,7 @@ public class BackpackCapability implements IBackpack {
 				// Try to get the backpack type from the chestplate slot.
 				stack = backpack.entity.getItemStackFromSlot(EntityEquipmentSlot.CHEST);
 				backpack.lastType = type = BackpackHelper.getBackpackType(stack);
+				backpack.invalidate();
 				if (type == null) return; // No backpack equipped.
 			} else type = BackpackHelper.getBackpackType(stack);
 			
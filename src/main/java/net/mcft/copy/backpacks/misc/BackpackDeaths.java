@@ -0,0 +1,135 @@
+package net.mcft.copy.backpacks.misc;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.world.World;
+import net.minecraft.world.storage.MapStorage;
+import net.minecraft.world.storage.WorldSavedData;
+
+import net.mcft.copy.backpacks.WearableBackpacks;
+import net.mcft.copy.backpacks.api.BackpackHelper;
+import net.mcft.copy.backpacks.api.IBackpack;
+import net.mcft.copy.backpacks.api.IBackpackData;
+import net.mcft.copy.backpacks.api.IBackpackType;
+import net.mcft.copy.backpacks.misc.util.NbtUtils;
+import net.mcft.copy.backpacks.misc.util.NbtUtils.NbtType;
+
+/** Holds deaths of backpack wearers in a world which haven't been handled yet,
+ *  so when many of them die at once, placing or dropping their backpacks can be
+ *  spread over multiple ticks. Saved with the world, so no backpacks are lost if
+ *  the server stops before all of them have been handled. */
+public class BackpackDeaths extends WorldSavedData {
+	
+	public static final String IDENTIFIER = WearableBackpacks.MOD_ID + "_deaths";
+	
+	public static final String TAG_DEATHS = "deaths";
+	public static final String TAG_X      = "x";
+	public static final String TAG_Y      = "y";
+	public static final String TAG_Z      = "z";
+	public static final String TAG_STACK  = "stack";
+	public static final String TAG_DATA   = "data";
+	
+	private final Deque<Death> _deaths = new ArrayDeque<Death>();
+	
+	public BackpackDeaths(String name) { super(name); }
+	
+	/** Returns the deaths of the specified (server) world, creating them if necessary. */
+	public static BackpackDeaths get(World world) {
+		MapStorage storage = world.getPerWorldStorage();
+		BackpackDeaths deaths = (BackpackDeaths)storage.getOrLoadData(BackpackDeaths.class, IDENTIFIER);
+		if (deaths == null) storage.setData(IDENTIFIER, deaths = new BackpackDeaths(IDENTIFIER));
+		return deaths;
+	}
+	
+	
+	/** Returns if there are no deaths waiting to be handled. */
+	public boolean isEmpty() { return _deaths.isEmpty(); }
+	/** Returns the number of deaths waiting to be handled. */
+	public int size() { return _deaths.size(); }
+	
+	/** Adds the death of an entity, taking its backpack's stack and data.
+	 *  The caller needs to unequip the backpack right after, so it can't
+	 *  also be dropped along with the entity's equipment. */
+	public void add(EntityLivingBase entity, IBackpack backpack) {
+		_deaths.add(new Death(entity.posX, entity.posY, entity.posZ,
+		                      backpack.getStack(), backpack.getData(), entity));
+		markDirty();
+	}
+	
+	/** Adds a death back to the end of the queue, for example
+	 *  because its chunk isn't loaded and it can't be handled yet.
+	 *  The entity is not kept, since it might take a while. */
+	public void requeue(Death death) {
+		_deaths.add((death.entity != null)
+			? new Death(death.x, death.y, death.z, death.stack, death.data, null)
+			: death);
+		markDirty();
+	}
+	
+	/** Removes and returns the next death to handle, or null if there is none. */
+	public Death poll() {
+		Death death = _deaths.poll();
+		if (death != null) markDirty();
+		return death;
+	}
+	
+	
+	@Override
+	public void readFromNBT(NBTTagCompound compound) {
+		_deaths.clear();
+		NBTTagList list = compound.getTagList(TAG_DEATHS, NbtType.COMPOUND);
+		for (int i = 0; i < list.tagCount(); i++) {
+			NBTTagCompound deathCompound = list.getCompoundTagAt(i);
+			ItemStack stack = NbtUtils.readItem(deathCompound.getCompoundTag(TAG_STACK));
+			IBackpackType type = BackpackHelper.getBackpackType(stack);
+			if (type == null) {
+				WearableBackpacks.LOG.error("Backpack of a deferred death is missing or not a backpack, skipping");
+				continue;
+			}
+			IBackpackData data = type.createBackpackData(stack);
+			NBTBase dataTag = deathCompound.getTag(TAG_DATA);
+			if ((data != null) && (dataTag != null)) data.deserializeNBT(dataTag);
+			_deaths.add(new Death(deathCompound.getDouble(TAG_X), deathCompound.getDouble(TAG_Y),
+			                      deathCompound.getDouble(TAG_Z), stack, data, null));
+		}
+	}
+	
+	@Override
+	public NBTTagCompound writeToNBT(NBTTagCompound compound) {
+		NBTTagList list = new NBTTagList();
+		for (Death death : _deaths)
+			list.appendTag(NbtUtils.createCompound(
+				TAG_X, death.x, TAG_Y, death.y, TAG_Z, death.z,
+				TAG_STACK, death.stack.serializeNBT(),
+				TAG_DATA, ((death.data != null) ? death.data.serializeNBT() : null)));
+		compound.setTag(TAG_DEATHS, list);
+		return compound;
+	}
+	
+	
+	public static class Death {
+		
+		public final double x, y, z;
+		public final ItemStack stack;
+		public final IBackpackData data;
+		// The entity which died, or null if the death was loaded from the
+		// world save or requeued. Used for IBackpackType.onDeath, not saved.
+		public final EntityLivingBase entity;
+		
+		public Death(double x, double y, double z, ItemStack stack,
+		             IBackpackData data, EntityLivingBase entity) {
+			this.x = x; this.y = y; this.z = z;
+			this.stack = stack;
+			this.data = data;
+			this.entity = entity;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,82 @@
+package net.mcft.copy.backpacks.misc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.world.World;
+
+/** Keeps track of the entities in each world which currently wear a backpack,
+ *  so equipped backpacks can be updated without having to look at every single
+ *  living entity each tick. Client and server keep separate lists, since in
+ *  singleplayer they run on different threads. */
+public final class BackpackWearers {
+	
+	private BackpackWearers() {  }
+	
+	
+	private static final Map<World, List<BackpackCapability>> _server = new HashMap<World, List<BackpackCapability>>();
+	private static final Map<World, List<BackpackCapability>> _client = new HashMap<World, List<BackpackCapability>>();
+	
+	private static Map<World, List<BackpackCapability>> getWorlds(World world) {
+		return (world.isRemote ? _client : _server);
+	}
+	
+	
+	/** Adds the backpack's entity to the wearers of the world it's currently in.
+	 *  Does nothing if it's already been added. Entities are removed again
+	 *  automatically once they stop wearing a backpack, die or leave the world. */
+	public static void add(BackpackCapability backpack) {
+		World world = backpack.entity.world;
+		if ((world == null) || (backpack.wearerWorld == world)) return;
+		backpack.wearerWorld = world;
+		getWorlds(world).computeIfAbsent(world, w -> new ArrayList<BackpackCapability>()).add(backpack);
+	}
+	
+	/** Calls the update function for each entity wearing a backpack in the
+	 *  world. Entities for which it returns false, as well as ones which have
+	 *  died, left the world or were unloaded since they were added, are removed
+	 *  afterwards. Entities added while updating will first be updated next time. */
+	public static void update(World world, Predicate<BackpackCapability> update) {
+		List<BackpackCapability> wearers = getWorlds(world).get(world);
+		if (wearers == null) return;
+		
+		int size = wearers.size();
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			BackpackCapability backpack = wearers.get(i);
+			EntityLivingBase entity = backpack.entity;
+			// Entity was added to another world's wearers (changed dimension).
+			if (backpack.wearerWorld != world) continue;
+			if (isLoaded(entity, world) && update.test(backpack))
+				wearers.set(kept++, backpack);
+			else backpack.wearerWorld = null;
+		}
+		// Move any wearers added during the update down and trim the list.
+		for (int i = size; i < wearers.size(); i++)
+			wearers.set(kept++, wearers.get(i));
+		while (wearers.size() > kept)
+			wearers.remove(wearers.size() - 1);
+	}
+	
+	/** Returns if the entity is still alive and loaded in the world. Entities
+	 *  unloaded with their chunk aren't marked as dead, but they're removed
+	 *  from the world's entity ID lookup, so that is checked as well. */
+	private static boolean isLoaded(EntityLivingBase entity, World world) {
+		return (!entity.isDead && (entity.world == world) &&
+		        (world.getEntityByID(entity.getEntityId()) == entity));
+	}
+	
+	/** Forgets about all wearers of the world, called when it's unloaded. */
+	public static void unload(World world) {
+		List<BackpackCapability> wearers = getWorlds(world).remove(world);
+		if (wearers == null) return;
+		for (BackpackCapability backpack : wearers)
+			if (backpack.wearerWorld == world)
+				backpack.wearerWorld = null;
+	}
+	
+}
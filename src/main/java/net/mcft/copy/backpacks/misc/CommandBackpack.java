@@ -0,0 +1,90 @@
+package net.mcft.copy.backpacks.misc;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentTranslation;
+
+import net.mcft.copy.backpacks.WearableBackpacks;
+import net.mcft.copy.backpacks.misc.LostBackpacks.LostBackpack;
+
+/** Allows players to list and recover their lost backpacks, see {@link LostBackpacks}.
+ *  Operators may also do so for other players by specifying their name. A backpack
+ *  to recover is picked by its number, or using "here" by where it was lost. */
+public class CommandBackpack extends CommandBase {
+	
+	private static final String LANG_KEY = "commands." + WearableBackpacks.MOD_ID + ".backpack";
+	
+	// How far away from the command sender a backpack recovered using "here" may have been lost.
+	private static final int HERE_DISTANCE = 16;
+	
+	@Override
+	public String getName() { return "backpack"; }
+	
+	@Override
+	public String getUsage(ICommandSender sender) { return LANG_KEY + ".usage"; }
+	
+	@Override
+	public int getRequiredPermissionLevel() { return 0; }
+	
+	@Override
+	public boolean checkPermission(MinecraftServer server, ICommandSender sender) { return true; }
+	
+	@Override
+	public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+		if ((args.length < 1) || (args.length > 3)) throw new WrongUsageException(getUsage(sender));
+		boolean list = args[0].equals("lost");
+		if (!list && !args[0].equals("recover")) throw new WrongUsageException(getUsage(sender));
+		
+		// Only operators may access other players' lost backpacks.
+		EntityPlayerMP player;
+		if (args.length > 1) {
+			player = getPlayer(server, sender, args[1]);
+			if ((player != sender) && !sender.canUseCommand(2, getName()))
+				throw new CommandException("commands.generic.permission");
+		} else player = getCommandSenderAsPlayer(sender);
+		
+		LostBackpacks lost = LostBackpacks.get(player.world);
+		List<LostBackpack> backpacks = lost.get(player.getUniqueID());
+		if (backpacks.isEmpty())
+			throw new CommandException(LANG_KEY + ".none", player.getName());
+		
+		if (list) {
+			for (int i = 0; i < backpacks.size(); i++) {
+				LostBackpack backpack = backpacks.get(i);
+				sender.sendMessage(new TextComponentTranslation(LANG_KEY + ".entry", i + 1,
+					backpack.stack.getTextComponent(), backpack.dimension,
+					backpack.pos.getX(), backpack.pos.getY(), backpack.pos.getZ()));
+			}
+		} else {
+			// Recovers the most recently lost backpack unless specified otherwise.
+			LostBackpack backpack;
+			if ((args.length > 2) && args[2].equals("here")) {
+				backpack = lost.getNearest(player.getUniqueID(),
+					sender.getEntityWorld().provider.getDimension(), sender.getPosition(), HERE_DISTANCE);
+				if (backpack == null) throw new CommandException(LANG_KEY + ".noneHere", player.getName());
+			} else backpack = backpacks.get(((args.length > 2)
+				? parseInt(args[2], 1, backpacks.size()) : backpacks.size()) - 1);
+			if (!lost.recover(player, backpack))
+				throw new CommandException(LANG_KEY + ".cantRecover", player.getName());
+			notifyCommandListener(sender, this, LANG_KEY + ".recovered", player.getName());
+		}
+	}
+	
+	@Override
+	public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender,
+	                                      String[] args, BlockPos pos) {
+		if (args.length == 1) return getListOfStringsMatchingLastWord(args, "lost", "recover");
+		if (args.length == 2) return getListOfStringsMatchingLastWord(args, server.getOnlinePlayerNames());
+		if ((args.length == 3) && args[0].equals("recover")) return getListOfStringsMatchingLastWord(args, "here");
+		return Collections.emptyList();
+	}
+	
+}
@@ -0,0 +1,188 @@
+package net.mcft.copy.backpacks.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.storage.MapStorage;
+import net.minecraft.world.storage.WorldSavedData;
+
+import net.mcft.copy.backpacks.WearableBackpacks;
+import net.mcft.copy.backpacks.api.BackpackHelper;
+import net.mcft.copy.backpacks.api.IBackpack;
+import net.mcft.copy.backpacks.api.IBackpackData;
+import net.mcft.copy.backpacks.api.IBackpackType;
+import net.mcft.copy.backpacks.misc.util.NbtUtils;
+import net.mcft.copy.backpacks.misc.util.NbtUtils.NbtType;
+
+/** Stores backpacks of players which couldn't be placed down on death, so they
+ *  can be recovered later instead of scattering their contents all around.
+ *  Shared by all dimensions, since players may respawn in a different one.
+ *  Indexed both by owner and by where they were lost, see getNearest. */
+public class LostBackpacks extends WorldSavedData {
+	
+	public static final String IDENTIFIER = WearableBackpacks.MOD_ID + "_lost";
+	
+	public static final String TAG_BACKPACKS = "backpacks";
+	public static final String TAG_OWNER     = "owner";
+	public static final String TAG_DIMENSION = "dimension";
+	public static final String TAG_POS       = "pos";
+	public static final String TAG_STACK     = "stack";
+	public static final String TAG_DATA      = "data";
+	
+	private final Map<UUID, List<LostBackpack>> _byOwner = new HashMap<UUID, List<LostBackpack>>();
+	// Lost backpacks by dimension, then by the chunk they were lost in.
+	private final Map<Integer, Map<Long, List<LostBackpack>>> _byPosition = new HashMap<Integer, Map<Long, List<LostBackpack>>>();
+	
+	public LostBackpacks(String name) { super(name); }
+	
+	/** Returns the lost backpacks of the specified (server) world's server, creating them if necessary. */
+	public static LostBackpacks get(World world) {
+		MapStorage storage = world.getMapStorage();
+		LostBackpacks lost = (LostBackpacks)storage.getOrLoadData(LostBackpacks.class, IDENTIFIER);
+		if (lost == null) storage.setData(IDENTIFIER, lost = new LostBackpacks(IDENTIFIER));
+		return lost;
+	}
+	
+	
+	/** Returns the lost backpacks of a player, oldest first. */
+	public List<LostBackpack> get(UUID owner) {
+		List<LostBackpack> backpacks = _byOwner.get(owner);
+		return ((backpacks != null) ? Collections.unmodifiableList(backpacks) : Collections.emptyList());
+	}
+	
+	/** Returns the player's lost backpack closest to the position, which was lost in
+	 *  the dimension and at most the specified distance away, or null if none. */
+	public LostBackpack getNearest(UUID owner, int dimension, BlockPos pos, int distance) {
+		Map<Long, List<LostBackpack>> byChunk = _byPosition.get(dimension);
+		if (byChunk == null) return null;
+		LostBackpack nearest = null;
+		double nearestDistSq = (double)distance * distance;
+		for (int x = (pos.getX() - distance) >> 4; x <= (pos.getX() + distance) >> 4; x++)
+			for (int z = (pos.getZ() - distance) >> 4; z <= (pos.getZ() + distance) >> 4; z++) {
+				List<LostBackpack> backpacks = byChunk.get(ChunkPos.asLong(x, z));
+				if (backpacks == null) continue;
+				for (LostBackpack backpack : backpacks) {
+					double distSq = backpack.pos.distanceSq(pos);
+					if (!backpack.owner.equals(owner) || (distSq > nearestDistSq)) continue;
+					nearest = backpack;
+					nearestDistSq = distSq;
+				}
+			}
+		return nearest;
+	}
+	
+	/** Stores the player's equipped backpack as lost at their current position. */
+	public LostBackpack add(EntityPlayer player, IBackpack backpack) {
+		LostBackpack lost = new LostBackpack(player.getUniqueID(), player.dimension,
+			new BlockPos(player), backpack.getStack(), backpack.getData());
+		add(lost);
+		markDirty();
+		return lost;
+	}
+	private void add(LostBackpack backpack) {
+		_byOwner.computeIfAbsent(backpack.owner, owner -> new ArrayList<LostBackpack>()).add(backpack);
+		_byPosition.computeIfAbsent(backpack.dimension, dimension -> new HashMap<Long, List<LostBackpack>>())
+			.computeIfAbsent(getChunkKey(backpack.pos), chunk -> new ArrayList<LostBackpack>()).add(backpack);
+	}
+	
+	/** Removes a lost backpack, for example after it's been recovered. */
+	public void remove(LostBackpack backpack) {
+		List<LostBackpack> backpacks = _byOwner.get(backpack.owner);
+		if ((backpacks == null) || !backpacks.remove(backpack)) return;
+		if (backpacks.isEmpty()) _byOwner.remove(backpack.owner);
+		
+		Map<Long, List<LostBackpack>> byChunk = _byPosition.get(backpack.dimension);
+		long chunk = getChunkKey(backpack.pos);
+		backpacks = byChunk.get(chunk);
+		backpacks.remove(backpack);
+		if (backpacks.isEmpty()) byChunk.remove(chunk);
+		if (byChunk.isEmpty()) _byPosition.remove(backpack.dimension);
+		markDirty();
+	}
+	
+	private static long getChunkKey(BlockPos pos) {
+		return ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+	}
+	
+	/** Equips a lost backpack onto the player and removes it from the store.
+	 *  Returns false if the player can't equip a backpack right now. */
+	public boolean recover(EntityPlayer player, LostBackpack backpack) {
+		if (!BackpackHelper.canEquipBackpack(player)) return false;
+		BackpackHelper.setEquippedBackpack(player, backpack.stack, backpack.data);
+		remove(backpack);
+		return true;
+	}
+	
+	
+	@Override
+	public void readFromNBT(NBTTagCompound compound) {
+		_byOwner.clear();
+		_byPosition.clear();
+		NBTTagList list = compound.getTagList(TAG_BACKPACKS, NbtType.COMPOUND);
+		for (int i = 0; i < list.tagCount(); i++) {
+			NBTTagCompound backpackCompound = list.getCompoundTagAt(i);
+			ItemStack stack = NbtUtils.readItem(backpackCompound.getCompoundTag(TAG_STACK));
+			IBackpackType type = BackpackHelper.getBackpackType(stack);
+			if (type == null) {
+				WearableBackpacks.LOG.error("Lost backpack is missing or not a backpack, skipping");
+				continue;
+			}
+			IBackpackData data = type.createBackpackData(stack);
+			NBTBase dataTag = backpackCompound.getTag(TAG_DATA);
+			if ((data != null) && (dataTag != null)) data.deserializeNBT(dataTag);
+			add(new LostBackpack(backpackCompound.getUniqueId(TAG_OWNER),
+				backpackCompound.getInteger(TAG_DIMENSION),
+				BlockPos.fromLong(backpackCompound.getLong(TAG_POS)), stack, data));
+		}
+	}
+	
+	@Override
+	public NBTTagCompound writeToNBT(NBTTagCompound compound) {
+		NBTTagList list = new NBTTagList();
+		for (List<LostBackpack> backpacks : _byOwner.values())
+			for (LostBackpack backpack : backpacks) {
+				NBTTagCompound backpackCompound = NbtUtils.createCompound(
+					TAG_DIMENSION, backpack.dimension,
+					TAG_POS, backpack.pos.toLong(),
+					TAG_STACK, backpack.stack.serializeNBT(),
+					TAG_DATA, ((backpack.data != null) ? backpack.data.serializeNBT() : null));
+				backpackCompound.setUniqueId(TAG_OWNER, backpack.owner);
+				list.appendTag(backpackCompound);
+			}
+		compound.setTag(TAG_BACKPACKS, list);
+		return compound;
+	}
+	
+	
+	public static class LostBackpack {
+		
+		public final UUID owner;
+		public final int dimension;
+		public final BlockPos pos;
+		public final ItemStack stack;
+		public final IBackpackData data;
+		
+		public LostBackpack(UUID owner, int dimension, BlockPos pos,
+		                    ItemStack stack, IBackpackData data) {
+			this.owner = owner;
+			this.dimension = dimension;
+			this.pos = pos;
+			this.stack = stack;
+			this.data = data;
+		}
+		
+	}
+	
+}
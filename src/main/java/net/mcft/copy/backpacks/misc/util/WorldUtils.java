@@ -1,5 +1,8 @@
 package net.mcft.copy.backpacks.misc.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.player.EntityPlayer;
@@ -7,6 +10,7 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.ItemStackHandler;
 
 public final class WorldUtils {
@@ -47,18 +51,18 @@ public final class WorldUtils {
 	public static void dropStacksFromBlock(World world, BlockPos pos, Iterable<ItemStack> stacks) {
 		for (ItemStack stack : stacks) dropStackFromBlock(world, pos, stack);
 	}
-	/** Spawns multiple ItemStacks dropping from a destroyed block. */
+	/** Spawns multiple ItemStacks dropping from a destroyed block, merging stackable ones. */
 	public static void dropStacksFromBlock(World world, BlockPos pos, ItemStackHandler items) {
-		for (int i = 0; i < items.getSlots(); i++) dropStackFromBlock(world, pos, items.getStackInSlot(i));
+		dropStacksFromBlock(world, pos, mergeStacks(items));
 	}
 	
 	/** Spawns multiple ItemStacks dropping from a destroyed block. */
 	public static void dropStacksFromBlock(TileEntity entity, Iterable<ItemStack> stacks) {
 		for (ItemStack stack : stacks) dropStackFromBlock(entity, stack);
 	}
-	/** Spawns multiple ItemStacks dropping from a destroyed block. */
+	/** Spawns multiple ItemStacks dropping from a destroyed block, merging stackable ones. */
 	public static void dropStacksFromBlock(TileEntity entity, ItemStackHandler items) {
-		for (int i = 0; i < items.getSlots(); i++) dropStackFromBlock(entity, items.getStackInSlot(i));
+		dropStacksFromBlock(entity, mergeStacks(items));
 	}
 	
 	/** Spawns an ItemStack as if it was dropped from an entity on death. */
@@ -87,9 +91,30 @@ public final class WorldUtils {
 	public static void dropStacksFromEntity(Entity entity, Iterable<ItemStack> stacks, float speed) {
 		for (ItemStack stack : stacks) dropStackFromEntity(entity, stack, speed);
 	}
-	/** Spawns multiple ItemStacks as if they were dropped from an entity on death. */
+	/** Spawns multiple ItemStacks as if they were dropped from an entity on death, merging stackable ones. */
 	public static void dropStacksFromEntity(Entity entity, ItemStackHandler items, float speed) {
-		for (int i = 0; i < items.getSlots(); i++) dropStackFromEntity(entity, items.getStackInSlot(i), speed);
+		dropStacksFromEntity(entity, mergeStacks(items), speed);
+	}
+	
+	/** Returns copies of the non-empty stacks in the item handler, with stacks
+	 *  which can stack with each other merged up to their maximum stack size.
+	 *  Used to keep the number of item entities spawned for drops down. */
+	public static List<ItemStack> mergeStacks(ItemStackHandler items) {
+		List<ItemStack> merged = new ArrayList<ItemStack>();
+		for (int i = 0; i < items.getSlots(); i++) {
+			ItemStack stack = items.getStackInSlot(i);
+			if (stack.isEmpty()) continue;
+			int count = stack.getCount();
+			for (int j = 0; (j < merged.size()) && (count > 0); j++) {
+				ItemStack other = merged.get(j);
+				if (!ItemHandlerHelper.canItemStacksStack(stack, other)) continue;
+				int amount = Math.min(count, other.getMaxStackSize() - other.getCount());
+				other.grow(amount);
+				count -= amount;
+			}
+			if (count > 0) merged.add(ItemHandlerHelper.copyStackWithSize(stack, count));
+		}
+		return merged;
 	}
 	
 }
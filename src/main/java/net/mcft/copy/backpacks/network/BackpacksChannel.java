@@ -1,7 +1,14 @@
 package net.mcft.copy.backpacks.network;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import net.minecraft.server.management.PlayerChunkMap;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.World;
 import net.minecraft.entity.Entity;
@@ -16,16 +23,23 @@ import net.minecraftforge.fml.relauncher.Side;
 import net.mcft.copy.backpacks.WearableBackpacks;
 
 /** Main network class. Handles registering messages
- *  and sending them to clients as well as the server. */
+ *  and sending them to clients as well as the server.
+ *  
+ *  Messages sent using sendTo, such as MessageOpenGui and MessageSyncSettings,
+ *  always go out immediately. Backpack updates are queued and sent at the end
+ *  of the tick, and updates of other entities are held back while a player's
+ *  connection isn't writable, see {@link #flushBackpackUpdates}. */
 public class BackpacksChannel extends SimpleNetworkWrapper {
 	
 	public BackpacksChannel() {
 		super(WearableBackpacks.MOD_ID);
 		
-		registerMessage(MessageSyncSettings.Handler.class,   MessageSyncSettings.class,   0, Side.CLIENT);
-		registerMessage(MessageBackpackUpdate.Handler.class, MessageBackpackUpdate.class, 1, Side.CLIENT);
-		registerMessage(MessageOpenGui.Handler.class,        MessageOpenGui.class,        2, Side.CLIENT);
-		registerMessage(MessageOpenBackpack.Handler.class,   MessageOpenBackpack.class,   3, Side.SERVER);
+		registerMessage(MessageSyncSettings.Handler.class,    MessageSyncSettings.class,    0, Side.CLIENT);
+		registerMessage(MessageBackpackUpdate.Handler.class,  MessageBackpackUpdate.class,  1, Side.CLIENT);
+		registerMessage(MessageOpenGui.Handler.class,         MessageOpenGui.class,         2, Side.CLIENT);
+		registerMessage(MessageOpenBackpack.Handler.class,    MessageOpenBackpack.class,    3, Side.SERVER);
+		registerMessage(MessageBackpackUpdates.Handler.class, MessageBackpackUpdates.class, 4, Side.CLIENT);
+		registerMessage(MessageRequestSettings.Handler.class, MessageRequestSettings.class, 5, Side.SERVER);
 	}
 	
 	/** Sends a message to a player. */
@@ -38,26 +52,170 @@ public class BackpacksChannel extends SimpleNetworkWrapper {
 		sendToAllAround(message, new TargetPoint(world.provider.getDimension(), x, y, z, distance));
 	}
 	
-	/** Sends a message to everyone around a point except a specific player. */
-	public void sendToAllAround(IMessage message, World world, double x, double y, double z,
-	                            double distance, EntityPlayer except) {
-		for (EntityPlayer player : (List<EntityPlayer>)world.playerEntities) {
-			if (player == except) continue;
-			double dx = x - player.posX;
-			double dy = y - player.posY;
-			double dz = z - player.posZ;
-			if ((dx * dx + dy * dy + dz * dz) < (distance * distance))
-				sendTo(message, player);
-		}
+	
+	// Bundling backpack updates
+	
+	// Backpack updates to send to each player at the end of the tick.
+	private final Map<EntityPlayerMP, List<MessageBackpackUpdate>> _pendingUpdates =
+		new HashMap<EntityPlayerMP, List<MessageBackpackUpdate>>();
+	
+	private static final Comparator<MessageBackpackUpdate> BY_ENTITY_ID =
+		Comparator.comparingInt(MessageBackpackUpdate::getEntityId);
+	
+	/** Queues a backpack update to be sent to a player at the end of the tick. */
+	public void queueBackpackUpdate(MessageBackpackUpdate message, EntityPlayer player) {
+		_pendingUpdates.computeIfAbsent((EntityPlayerMP)player,
+			p -> new ArrayList<MessageBackpackUpdate>()).add(message);
 	}
 	
-	/** Sends a message to a everyone tracking an entity. If sendToEntity is
-	 *  true and the entity is a player, also sends the message to them. */
-	public void sendToAllTracking(IMessage message, Entity entity, boolean sendToEntity) {
-		((WorldServer)entity.world).getEntityTracker()
-			.sendToTracking(entity, getPacketFrom(message));
+	/** Queues a backpack update to be sent to everyone tracking an entity at the end of
+	 *  the tick. If sendToEntity is true and the entity is a player, also sends it to them. */
+	public void queueBackpackUpdateToAllTracking(MessageBackpackUpdate message, Entity entity, boolean sendToEntity) {
+		for (EntityPlayer player : ((WorldServer)entity.world).getEntityTracker().getTrackingPlayers(entity))
+			queueBackpackUpdate(message, player);
 		if (sendToEntity && (entity instanceof EntityPlayer))
-			sendTo(message, (EntityPlayer)entity);
+			queueBackpackUpdate(message, (EntityPlayer)entity);
+	}
+	
+	/** Sends all queued backpack updates, one bundle per player. Updates made obsolete
+	 *  by a later one of the same entity are dropped. Called at the end of each
+	 *  server tick, so the number of packets doesn't scale with updates.
+	 *  
+	 *  If a player's connection isn't writable, only updates of their own backpack
+	 *  are sent. Updates of other entities are purely cosmetic, so they're kept
+	 *  until the connection is writable again, instead of adding to its backlog.
+	 *  Since obsolete updates are dropped, they don't pile up in the meantime. */
+	public void flushBackpackUpdates() {
+		if (!_joining.isEmpty()) flushJoinSnapshots();
+		if (_pendingUpdates.isEmpty()) return;
+		Iterator<Map.Entry<EntityPlayerMP, List<MessageBackpackUpdate>>> iter = _pendingUpdates.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<EntityPlayerMP, List<MessageBackpackUpdate>> entry = iter.next();
+			EntityPlayerMP player = entry.getKey();
+			// Player might have logged out after updates were queued this tick.
+			if (!player.connection.getNetworkManager().isChannelOpen()) { iter.remove(); continue; }
+			// Holding back updates of entities in chunks not sent yet, see beginJoin.
+			if (_joining.containsKey(player)) continue;
+			List<MessageBackpackUpdate> updates = entry.getValue();
+			collapse(updates);
+			
+			if (player.connection.getNetworkManager().channel().isWritable()) {
+				sendTo(MessageBackpackUpdates.create(updates), player);
+				iter.remove();
+				continue;
+			}
+			
+			List<MessageBackpackUpdate> own = removeOwn(updates, player);
+			if (!own.isEmpty()) sendTo(MessageBackpackUpdates.create(own), player);
+			if (updates.isEmpty()) iter.remove();
+		}
+	}
+	
+	/** Discards everything still waiting to be sent to a player.
+	 *  Called when they log out, so they aren't kept around. */
+	public void discardPending(EntityPlayer player) {
+		_pendingUpdates.remove(player);
+		_joining.remove(player);
+	}
+	
+	/** Removes and returns the updates of a player's own backpack. */
+	private static List<MessageBackpackUpdate> removeOwn(List<MessageBackpackUpdate> updates, EntityPlayer player) {
+		List<MessageBackpackUpdate> own = new ArrayList<MessageBackpackUpdate>();
+		for (Iterator<MessageBackpackUpdate> iter = updates.iterator(); iter.hasNext(); ) {
+			MessageBackpackUpdate update = iter.next();
+			if (update.getEntityId() != player.getEntityId()) continue;
+			own.add(update);
+			iter.remove();
+		}
+		return own;
+	}
+	
+	/** Sorts updates by entity ID and removes the ones made obsolete by a later
+	 *  one of the same entity, so only the last update of each type is kept, and
+	 *  an OPEN update only if no RENDER update follows it. */
+	private static void collapse(List<MessageBackpackUpdate> updates) {
+		// Sorting is stable, so updates of the same entity stay in order.
+		updates.sort(BY_ENTITY_ID);
+		int kept = 0;
+		int entityStart = 0; // Index of the first kept update of the current entity.
+		for (int i = 0; i < updates.size(); i++) {
+			MessageBackpackUpdate update = updates.get(i);
+			if ((kept > entityStart) && (updates.get(entityStart).getEntityId() != update.getEntityId()))
+				entityStart = kept;
+			// Remove the entity's kept updates replaced by this one, keeping the others in order.
+			// There's at most one of each type, so this doesn't look at more than a few.
+			int entityKept = entityStart;
+			for (int j = entityStart; j < kept; j++) {
+				MessageBackpackUpdate other = updates.get(j);
+				if (!update.replaces(other)) updates.set(entityKept++, other);
+			}
+			kept = entityKept;
+			updates.set(kept++, update);
+		}
+		updates.subList(kept, updates.size()).clear();
+	}
+	
+	
+	// Join snapshots
+	
+	// Ticks to hold back updates at most for a joining player, waiting for chunks to be sent.
+	private static final int MAX_JOIN_TICKS = 100;
+	
+	// Players who recently joined a world, and for how many ticks they've been waiting.
+	private final Map<EntityPlayerMP, Join> _joining = new HashMap<EntityPlayerMP, Join>();
+	
+	/** Called when a player joins a world (logging in, respawning or changing dimension).
+	 *  At the end of the tick, updates of their own backpack and of every entity in a chunk
+	 *  already sent to them are sent in a single MessageBackpackUpdates. Settings aren't
+	 *  part of this, they're always sent immediately, see BackpacksConfig.
+	 *  
+	 *  Updates of entities in chunks the chunk map hasn't sent to the player yet are held
+	 *  back, since the client wouldn't know about these entities. They're sent as soon as
+	 *  their chunk has been sent, or once MAX_JOIN_TICKS have passed. */
+	public void beginJoin(EntityPlayer player) {
+		_joining.computeIfAbsent((EntityPlayerMP)player, p -> new Join()).ticks = 0;
+	}
+	
+	private void flushJoinSnapshots() {
+		Iterator<Map.Entry<EntityPlayerMP, Join>> iter = _joining.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<EntityPlayerMP, Join> entry = iter.next();
+			EntityPlayerMP player = entry.getKey();
+			boolean timedOut = (++entry.getValue().ticks >= MAX_JOIN_TICKS);
+			List<MessageBackpackUpdate> updates = _pendingUpdates.get(player);
+			if (updates != null) {
+				List<MessageBackpackUpdate> ready = timedOut ? updates : removeReady(updates, player);
+				if (!ready.isEmpty()) {
+					collapse(ready);
+					sendTo(MessageBackpackUpdates.create(ready), player);
+				}
+				if (timedOut || updates.isEmpty()) _pendingUpdates.remove(player);
+				else continue;
+			}
+			iter.remove();
+		}
+	}
+	
+	/** Removes and returns the updates which can be sent to a joining player, which are
+	 *  the ones of their own backpack and of entities in chunks that were sent to them. */
+	private static List<MessageBackpackUpdate> removeReady(List<MessageBackpackUpdate> updates, EntityPlayerMP player) {
+		PlayerChunkMap chunkMap = player.getServerWorld().getPlayerChunkMap();
+		List<MessageBackpackUpdate> ready = new ArrayList<MessageBackpackUpdate>();
+		for (Iterator<MessageBackpackUpdate> iter = updates.iterator(); iter.hasNext(); ) {
+			MessageBackpackUpdate update = iter.next();
+			Entity entity = player.world.getEntityByID(update.getEntityId());
+			// Entities no longer in the world are ignored by the client anyway.
+			if ((entity != null) && (entity != player) &&
+			    !chunkMap.isPlayerWatchingChunk(player, MathHelper.floor(entity.posX) >> 4,
+			                                            MathHelper.floor(entity.posZ) >> 4)) continue;
+			ready.add(update);
+			iter.remove();
+		}
+		return ready;
+	}
+	
+	private static class Join {
+		public int ticks = 0;
 	}
 	
 }
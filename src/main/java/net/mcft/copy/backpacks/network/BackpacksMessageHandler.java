@@ -1,18 +1,31 @@
 package net.mcft.copy.backpacks.network;
 
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.MapMaker;
+
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.util.IThreadListener;
 import net.minecraft.world.World;
-import net.minecraft.world.WorldServer;
 
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 
+import net.mcft.copy.backpacks.WearableBackpacks;
 import net.mcft.copy.backpacks.misc.util.ClientUtils;
 
 public abstract class BackpacksMessageHandler<T extends IMessage> implements IMessageHandler<T, IMessage> {
 	
+	// Scheduled messages are collected per scheduler (the server or the client)
+	// and handled in one batch, instead of scheduling a separate task for each
+	// of them. Keyed weakly, so the batch of a stopped integrated server is
+	// dropped along with it, even if its drain task never got to run.
+	private static final Map<IThreadListener, Batch> _batches = new MapMaker().weakKeys().makeMap();
+	
 	/** Returns whether the message handling should be scheduled, meaning it
 	 *  will be executed on the world thread instead of the network thread. */
 	public boolean isScheduled() { return true; }
@@ -24,10 +37,46 @@ public abstract class BackpacksMessageHandler<T extends IMessage> implements IMe
 	@Override
 	public final IMessage onMessage(T message, MessageContext ctx) {
 		if (!isScheduled()) handle(message, ctx);
-		else getScheduler(ctx).addScheduledTask(() -> handle(message, ctx));
+		else schedule(ctx, () -> handle(message, ctx));
 		return null;
 	}
 	
+	/** Adds a task to the scheduler's batch, and schedules a task to drain
+	 *  it on the world thread, unless one is already waiting to run. */
+	private static void schedule(MessageContext ctx, Runnable task) {
+		IThreadListener scheduler = getScheduler(ctx);
+		Batch batch = _batches.computeIfAbsent(scheduler, s -> new Batch());
+		batch.queue.add(task);
+		if (batch.scheduled.compareAndSet(false, true))
+			scheduler.addScheduledTask(batch::drain);
+	}
+	
+	/** Discards the messages from the server which haven't been handled
+	 *  yet. Called when the client disconnects from the server. */
+	public static void discardClientMessages() {
+		Batch batch = _batches.get(ClientUtils.getScheduler());
+		if (batch != null) batch.queue.clear();
+	}
+	
+	// Doesn't reference its scheduler, so it doesn't keep its weak key alive.
+	private static class Batch {
+		
+		public final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+		public final AtomicBoolean scheduled = new AtomicBoolean(false);
+		
+		public void drain() {
+			// Reset before draining, so tasks added from now on are either
+			// handled by this drain, or cause another one to be scheduled.
+			scheduled.set(false);
+			Runnable task;
+			while ((task = queue.poll()) != null) {
+				try { task.run(); }
+				catch (Exception ex) { WearableBackpacks.LOG.error("Error handling message", ex); }
+			}
+		}
+		
+	}
+	
 	// Utility methods
 	
 	/** Returns the player associated with this message context.
@@ -45,10 +94,10 @@ public abstract class BackpacksMessageHandler<T extends IMessage> implements IMe
 	}
 	
 	/** Returns the appropriate thread scheduler for this message context.
-	 *  On the server, returns the world the player is in (world's thread).
+	 *  On the server, returns the server (which all worlds schedule through).
 	 *  On the client, returns the Minecraft instance (main game thread). */
 	public static IThreadListener getScheduler(MessageContext ctx) {
-		return (ctx.side.isServer() ? (WorldServer)getWorld(ctx) : ClientUtils.getScheduler());
+		return (ctx.side.isServer() ? getWorld(ctx).getMinecraftServer() : ClientUtils.getScheduler());
 	}
 	
 }
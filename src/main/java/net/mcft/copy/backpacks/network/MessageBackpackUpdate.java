@@ -1,26 +1,40 @@
 package net.mcft.copy.backpacks.network;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 import net.minecraft.entity.Entity;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.PacketBuffer;
+import net.minecraft.world.World;
 
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
-import net.mcft.copy.backpacks.api.IBackpack;
+import net.mcft.copy.backpacks.api.BackpackHelper;
+import net.mcft.copy.backpacks.client.LidAnimations;
 import net.mcft.copy.backpacks.misc.BackpackCapability;
+import net.mcft.copy.backpacks.misc.util.NbtUtils;
 
-/** Sends and updates equipped backpack capability data. */
+/** Sends and updates equipped backpack capability data.
+ *  Usually sent bundled with others, see {@link MessageBackpackUpdates}. */
 public class MessageBackpackUpdate implements IMessage {
 	
+	private static final String[] TAG_COLOR = { "display", "color" };
+	private static final int FLAG_OPEN  = 0x01;
+	private static final int FLAG_COLOR = 0x02;
+	
 	private int _entityId;
 	private UpdateType _type;
 	private ItemStack _stack = ItemStack.EMPTY;
 	private boolean _open;
+	private byte[] _encoded = null;
 	
 	public MessageBackpackUpdate() {  }
 	
@@ -31,6 +45,17 @@ public class MessageBackpackUpdate implements IMessage {
 		message._stack = stack;
 		return message;
 	}
+	/** Creates an update containing only what's needed to render an equipped
+	 *  backpack: Its item, color and whether it's open. Sent to players other
+	 *  than the wearer, so potentially large NBT data doesn't need to be sent. */
+	public static MessageBackpackUpdate render(Entity entity, ItemStack stack, boolean open) {
+		MessageBackpackUpdate message = new MessageBackpackUpdate();
+		message._entityId = entity.getEntityId();
+		message._type = UpdateType.RENDER;
+		message._stack = stack;
+		message._open = open;
+		return message;
+	}
 	public static MessageBackpackUpdate open(Entity entity, boolean open) {
 		MessageBackpackUpdate message = new MessageBackpackUpdate();
 		message._entityId = entity.getEntityId();
@@ -39,33 +64,106 @@ public class MessageBackpackUpdate implements IMessage {
 		return message;
 	}
 	
+	public int getEntityId() { return _entityId; }
+	
+	/** Returns if the other update is of the same entity and type (or an
+	 *  OPEN update, if this one is a RENDER update, which includes whether
+	 *  the backpack is open), so it's made obsolete if this one is sent after it. */
+	public boolean replaces(MessageBackpackUpdate other) {
+		return ((_entityId == other._entityId) && ((_type == other._type) ||
+			((_type == UpdateType.RENDER) && (other._type == UpdateType.OPEN))));
+	}
+	
 	@Override
 	public void fromBytes(ByteBuf buf) {
 		PacketBuffer buffer = new PacketBuffer(buf);
-		try {
-			_entityId = buffer.readInt();
-			_type = UpdateType.fromByte(buffer.readByte());
-			switch (_type) {
-				case STACK: _stack = buffer.readItemStack(); break;
-				case OPEN: _open = buffer.readBoolean(); break;
-				default: throw new RuntimeException("Invalid UpdateType");
-			}
-		} catch (Exception ex) {
-			_entityId = -1;
-			_type = UpdateType.INVALID;
-			_stack = ItemStack.EMPTY;
-			_open = false;
-		}
+		try { readUpdate(buffer, buffer.readInt()); }
+		catch (Exception ex) { invalidate(); }
 	}
 	
 	@Override
 	public void toBytes(ByteBuf buf) {
 		PacketBuffer buffer = new PacketBuffer(buf);
 		buffer.writeInt(_entityId);
+		writeUpdate(buffer);
+	}
+	
+	/** Reads the update following the entity ID, which
+	 *  is read separately. Also used by MessageBackpackUpdates. */
+	void readUpdate(PacketBuffer buffer, int entityId) throws IOException {
+		_entityId = entityId;
+		_type = UpdateType.fromByte(buffer.readByte());
+		switch (_type) {
+			case STACK: _stack = buffer.readItemStack(); break;
+			case OPEN: _open = buffer.readBoolean(); break;
+			case RENDER:
+				Item item = Item.getItemById(buffer.readVarInt());
+				byte flags = buffer.readByte();
+				_stack = ((item != null) ? new ItemStack(item) : ItemStack.EMPTY);
+				_open = ((flags & FLAG_OPEN) != 0);
+				if ((flags & FLAG_COLOR) != 0) {
+					int color = buffer.readInt();
+					if (!_stack.isEmpty()) NbtUtils.set(_stack, color, TAG_COLOR);
+				}
+				break;
+			default: throw new RuntimeException("Invalid UpdateType");
+		}
+	}
+	
+	/** Writes the update without the entity ID, which
+	 *  is written separately. Also used by MessageBackpackUpdates.
+	 *  The same update is often sent to many players in separate
+	 *  bundles, so it's only encoded once and the bytes are reused. */
+	void writeUpdate(PacketBuffer buffer) {
+		if (_encoded == null) {
+			PacketBuffer encoded = new PacketBuffer(Unpooled.buffer());
+			encodeUpdate(encoded);
+			_encoded = Arrays.copyOf(encoded.array(), encoded.writerIndex());
+		}
+		buffer.writeBytes(_encoded);
+	}
+	
+	private void encodeUpdate(PacketBuffer buffer) {
 		buffer.writeByte(_type.ordinal());
 		switch (_type) {
 			case STACK: buffer.writeItemStack(_stack); break;
 			case OPEN: buffer.writeBoolean(_open); break;
+			case RENDER:
+				boolean hasColor = NbtUtils.has(_stack, TAG_COLOR);
+				buffer.writeVarInt(Item.getIdFromItem(_stack.getItem()));
+				buffer.writeByte((_open ? FLAG_OPEN : 0) | (hasColor ? FLAG_COLOR : 0));
+				if (hasColor) buffer.writeInt(NbtUtils.get(_stack, 0, TAG_COLOR));
+				break;
+			default: throw new RuntimeException("Invalid UpdateType");
+		}
+	}
+	
+	void invalidate() {
+		_entityId = -1;
+		_type = UpdateType.INVALID;
+		_stack = ItemStack.EMPTY;
+		_open = false;
+	}
+	
+	/** Applies the update to the entity's backpack on the client. */
+	@SideOnly(Side.CLIENT)
+	void apply(World world) {
+		if (_type == UpdateType.INVALID) return;
+		Entity entity = world.getEntityByID(_entityId);
+		if (entity == null) return;
+		BackpackCapability backpack = (BackpackCapability)
+			BackpackHelper.getBackpackCapability(entity);
+		if (backpack == null) return;
+		switch (_type) {
+			case STACK: backpack.stack = _stack; backpack.invalidate(); break;
+			case RENDER:
+				backpack.stack = _stack;
+				backpack.invalidate();
+				// Fall through to also update whether it's open.
+			case OPEN:
+				backpack.playersUsing = (_open ? 1 : 0);
+				LidAnimations.add(backpack);
+				break;
 			default: throw new RuntimeException("Invalid UpdateType");
 		}
 	}
@@ -74,27 +172,19 @@ public class MessageBackpackUpdate implements IMessage {
 		@Override
 		@SideOnly(Side.CLIENT)
 		public void handle(MessageBackpackUpdate message, MessageContext ctx) {
-			Entity entity = getWorld(ctx).getEntityByID(message._entityId);
-			if (entity == null) return;
-			BackpackCapability backpack = (BackpackCapability)entity
-				.getCapability(IBackpack.CAPABILITY, null);
-			if (backpack == null) return;
-			switch (message._type) {
-				case STACK: backpack.stack = message._stack; break;
-				case OPEN: backpack.playersUsing = (message._open ? 1 : 0); break;
-				default: throw new RuntimeException("Invalid UpdateType");
-			}
+			message.apply(getWorld(ctx));
 		}
 	}
 	
 	private enum UpdateType {
-		INVALID, STACK, OPEN;
+		INVALID, STACK, OPEN, RENDER;
 		
 		public static UpdateType fromByte(byte b) {
 			switch (b) {
 				default: return INVALID;
 				case 1: return STACK;
 				case 2: return OPEN;
+				case 3: return RENDER;
 			}
 		}
 	}
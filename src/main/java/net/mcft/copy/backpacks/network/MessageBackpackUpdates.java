@@ -0,0 +1,71 @@
+package net.mcft.copy.backpacks.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.world.World;
+
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+/** Bundles all backpack updates sent to a player in one tick, see
+ *  {@link BackpacksChannel#flushBackpackUpdates}. Updates are sorted by
+ *  entity ID, which is written as a VarInt difference to the previous one. */
+public class MessageBackpackUpdates implements IMessage {
+	
+	private List<MessageBackpackUpdate> _updates;
+	
+	public MessageBackpackUpdates() {  }
+	
+	/** Creates a bundle of updates, which must be sorted by entity ID. */
+	public static MessageBackpackUpdates create(List<MessageBackpackUpdate> updates) {
+		MessageBackpackUpdates message = new MessageBackpackUpdates();
+		message._updates = updates;
+		return message;
+	}
+	
+	@Override
+	public void fromBytes(ByteBuf buf) {
+		PacketBuffer buffer = new PacketBuffer(buf);
+		int count = buffer.readVarInt();
+		_updates = new ArrayList<MessageBackpackUpdate>(count);
+		int entityId = 0;
+		for (int i = 0; i < count; i++) {
+			MessageBackpackUpdate update = new MessageBackpackUpdate();
+			try { update.readUpdate(buffer, entityId += buffer.readVarInt()); }
+			// Can't know where the next update starts, so skip the rest.
+			catch (Exception ex) { break; }
+			_updates.add(update);
+		}
+	}
+	
+	@Override
+	public void toBytes(ByteBuf buf) {
+		PacketBuffer buffer = new PacketBuffer(buf);
+		buffer.writeVarInt(_updates.size());
+		int entityId = 0;
+		for (MessageBackpackUpdate update : _updates) {
+			buffer.writeVarInt(update.getEntityId() - entityId);
+			entityId = update.getEntityId();
+			update.writeUpdate(buffer);
+		}
+	}
+	
+	public static class Handler extends BackpacksMessageHandler<MessageBackpackUpdates> {
+		@Override
+		@SideOnly(Side.CLIENT)
+		public void handle(MessageBackpackUpdates message, MessageContext ctx) { message.apply(getWorld(ctx)); }
+	}
+	
+	@SideOnly(Side.CLIENT)
+	void apply(World world) {
+		for (MessageBackpackUpdate update : _updates)
+			update.apply(world);
+	}
+	
+}
@@ -14,21 +14,37 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 
 import net.mcft.copy.backpacks.client.GuiBackpack;
 import net.mcft.copy.backpacks.container.ContainerBackpack;
+import net.mcft.copy.backpacks.misc.BackpackSize;
 
 /** Causes the receiving player to open a GUI.
- *  (Currently hardcoded to GuiBackpack, though.) */
+ *  (Currently hardcoded to GuiBackpack, though.)
+ *  
+ *  Written as a version byte, VarInt window ID, columns and rows bytes,
+ *  a flags byte and the title, if it's not the default one. Older versions
+ *  wrote the window ID as an int followed by an NBT compound. Since window
+ *  IDs are small, that layout always starts with a zero byte. */
 public class MessageOpenGui implements IMessage {
 	
+	private static final int VERSION = 1;
+	
+	private static final int FLAG_LOCALIZED = 0x1;
+	private static final int FLAG_TITLE     = 0x2;
+	
+	private static final int MAX_TITLE_LENGTH = 32767;
+	
 	private int _windowId;
-	private NBTTagCompound _data;
+	private BackpackSize _size;
+	private String _title;
+	private boolean _titleLocalized;
 	
 	public MessageOpenGui() {  }
 	
 	public static MessageOpenGui create(ContainerBackpack container) {
 		MessageOpenGui message = new MessageOpenGui();
-		message._windowId = container.windowId;
-		message._data = new NBTTagCompound();
-		container.writeToNBT(message._data);
+		message._windowId       = container.windowId;
+		message._size           = container.size;
+		message._title          = container.title;
+		message._titleLocalized = container.titleLocalized;
 		return message;
 	}
 	
@@ -36,26 +52,48 @@ public class MessageOpenGui implements IMessage {
 	public void fromBytes(ByteBuf buf) {
 		PacketBuffer buffer = new PacketBuffer(buf);
 		try {
-			_windowId = buffer.readInt();
-			_data = buffer.readCompoundTag();
+			if (buffer.getByte(buffer.readerIndex()) == 0) {
+				_windowId = buffer.readInt();
+				NBTTagCompound data = buffer.readCompoundTag();
+				_size           = BackpackSize.parse(data.getTag(ContainerBackpack.TAG_SIZE));
+				_title          = data.getString(ContainerBackpack.TAG_TITLE);
+				_titleLocalized = data.getBoolean(ContainerBackpack.TAG_LOCALIZED);
+				return;
+			}
+			int version = buffer.readByte();
+			if (version != VERSION) throw new RuntimeException(
+				"Unknown MessageOpenGui version " + version);
+			_windowId = buffer.readVarInt();
+			_size     = new BackpackSize(buffer.readUnsignedByte(), buffer.readUnsignedByte());
+			int flags = buffer.readUnsignedByte();
+			_titleLocalized = ((flags & FLAG_LOCALIZED) != 0);
+			_title = (((flags & FLAG_TITLE) != 0) ? buffer.readString(MAX_TITLE_LENGTH)
+			                                      : ContainerBackpack.DEFAULT_TITLE);
 		} catch (Exception ex) {
 			_windowId = -1;
-			_data = null;
+			_size = null;
 		}
 	}
 	
 	@Override
 	public void toBytes(ByteBuf buf) {
 		PacketBuffer buffer = new PacketBuffer(buf);
-		buffer.writeInt(_windowId);
-		buffer.writeCompoundTag(_data);
+		boolean hasTitle = !_title.equals(ContainerBackpack.DEFAULT_TITLE);
+		buffer.writeByte(VERSION);
+		buffer.writeVarInt(_windowId);
+		buffer.writeByte(_size.getColumns());
+		buffer.writeByte(_size.getRows());
+		buffer.writeByte((_titleLocalized ? FLAG_LOCALIZED : 0) | (hasTitle ? FLAG_TITLE : 0));
+		if (hasTitle) buffer.writeString(_title);
 	}
 	
 	public static class Handler extends BackpacksMessageHandler<MessageOpenGui> {
 		@Override
 		@SideOnly(Side.CLIENT)
 		public void handle(MessageOpenGui message, MessageContext ctx) {
-			ContainerBackpack container = new ContainerBackpack(getPlayer(ctx), message._data) {
+			if (message._size == null) return;
+			ContainerBackpack container = new ContainerBackpack(getPlayer(ctx),
+					message._size, message._title, message._titleLocalized) {
 				@Override public boolean canInteractWith(EntityPlayer player) { return true; } };
 			container.windowId = message._windowId;
 			Minecraft.getMinecraft().displayGuiScreen(new GuiBackpack(container));
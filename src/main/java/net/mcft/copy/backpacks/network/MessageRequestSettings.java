@@ -0,0 +1,33 @@
+package net.mcft.copy.backpacks.network;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+import net.mcft.copy.backpacks.WearableBackpacks;
+
+/** Sent to the server when the client received only the hash of the
+ *  settings, but doesn't have a matching copy. See MessageSyncSettings. */
+public class MessageRequestSettings implements IMessage {
+	
+	public MessageRequestSettings() {  }
+	
+	public static MessageRequestSettings create() { return new MessageRequestSettings(); }
+	
+	@Override
+	public void fromBytes(ByteBuf buf) {  }
+	@Override
+	public void toBytes(ByteBuf buf) {  }
+	
+	public static class Handler extends BackpacksMessageHandler<MessageRequestSettings> {
+		@Override
+		public void handle(MessageRequestSettings message, MessageContext ctx) {
+			EntityPlayer player = getPlayer(ctx);
+			WearableBackpacks.CHANNEL.sendTo(MessageSyncSettings.create(), player);
+		}
+	}
+	
+}
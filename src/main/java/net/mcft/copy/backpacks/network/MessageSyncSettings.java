@@ -1,8 +1,23 @@
 package net.mcft.copy.backpacks.network;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
 import io.netty.buffer.ByteBuf;
 
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.nbt.CompressedStreamTools;
 import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTSizeTracker;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
 
@@ -14,33 +29,104 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 import net.mcft.copy.backpacks.WearableBackpacks;
 import net.mcft.copy.backpacks.config.Setting;
 
-/** Synchronizes config settings to players joining a world. */
+/** Synchronizes config settings to players joining a world.
+ *  The settings are only serialized once each time the config changes.
+ *  Players who recently logged out with the same settings (for example
+ *  when reconnecting) are only sent their SHA-256 hash, and reuse the copy
+ *  they have. Should they not have it anymore, they request it again using
+ *  {@link MessageRequestSettings}.
+ *  <p>
+ *  The server-side state is accessed from both the server thread and,
+ *  when the config is changed in-game, the client thread, so all access
+ *  to it is synchronized on this class. */
 public class MessageSyncSettings implements IMessage {
 	
+	private static final int MAX_LEFT_PLAYERS = 256;
+	
+	// Server-side: Serialized settings and hash, null if the config changed since.
+	private static byte[] _payload = null;
+	private static byte[] _payloadHash;
+	// Server-side: Serialized settings held by the players who most recently logged
+	// out, see playerLeft. Cleared along with the payload, see invalidate.
+	private static final Map<UUID, byte[]> _leftPayloads = new LinkedHashMap<UUID, byte[]>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, byte[]> eldest) {
+			return (size() > MAX_LEFT_PLAYERS);
+		}
+	};
+	
+	// Client-side: Settings last received and their hash. Handled on the network thread,
+	// so they're replaced together as one object, and never seen out of sync.
+	private static volatile Received _received = null;
+	
+	
+	private byte[] _hash;
+	private byte[] _bytes;
 	private NBTTagCompound _data;
 	
 	public MessageSyncSettings() {  }
 	
-	public static MessageSyncSettings create() {
+	/** Creates a message containing the current settings. */
+	public static synchronized MessageSyncSettings create() {
+		if (_payload == null) {
+			NBTTagCompound data = new NBTTagCompound();
+			for (Setting<?> setting : WearableBackpacks.CONFIG.getSettings())
+				if (setting.doesSync() && setting.isRequiredEnabled())
+					data.setTag(setting.getFullName(), setting.writeSynced());
+			try {
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				CompressedStreamTools.write(data, new DataOutputStream(stream));
+				_payload = stream.toByteArray();
+				_payloadHash = MessageDigest.getInstance("SHA-256").digest(_payload);
+			} catch (IOException | NoSuchAlgorithmException ex) { throw new RuntimeException(ex); }
+		}
 		MessageSyncSettings message = new MessageSyncSettings();
-		message._data = new NBTTagCompound();
-		for (Setting<?> setting : WearableBackpacks.CONFIG.getSettings())
-			if (setting.doesSync() && setting.isRequiredEnabled())
-				message._data.setTag(setting.getFullName(), setting.writeSynced());
+		message._hash = _payloadHash;
+		message._bytes = _payload;
+		return message;
+	}
+	
+	/** Creates a message containing the current settings for a player joining
+	 *  the server. If they left with the same settings, only sends the hash. */
+	public static synchronized MessageSyncSettings create(EntityPlayer player) {
+		MessageSyncSettings message = create();
+		byte[] held = _leftPayloads.remove(player.getUniqueID());
+		if (Arrays.equals(held, message._bytes)) message._bytes = null;
 		return message;
 	}
 	
+	/** Called when a player logs out. Players who are online always hold the
+	 *  current settings, since changes are sent to everyone. They're remembered
+	 *  so only the hash needs to be sent when they come back soon after. */
+	public static synchronized void playerLeft(EntityPlayer player) {
+		if (_payload != null) _leftPayloads.put(player.getUniqueID(), _payload);
+	}
+	
+	/** Called when the config has changed or the server stopped, so the
+	 *  settings are serialized again and sent in full to every player. */
+	public static synchronized void invalidate() {
+		_payload = null;
+		_leftPayloads.clear();
+	}
+	
 	@Override
 	public void fromBytes(ByteBuf buf) {
 		PacketBuffer buffer = new PacketBuffer(buf);
-		try { _data = buffer.readCompoundTag(); }
-		catch (Exception ex) { _data = null; }
+		try {
+			_hash = buffer.readByteArray(32);
+			if (!buffer.readBoolean()) return;
+			_bytes = buffer.readByteArray();
+			_data = CompressedStreamTools.read(new DataInputStream(
+				new ByteArrayInputStream(_bytes)), new NBTSizeTracker(2097152L));
+		} catch (Exception ex) { _data = null; }
 	}
 	
 	@Override
 	public void toBytes(ByteBuf buf) {
 		PacketBuffer buffer = new PacketBuffer(buf);
-		buffer.writeCompoundTag(_data);
+		buffer.writeByteArray(_hash);
+		buffer.writeBoolean(_bytes != null);
+		if (_bytes != null) buffer.writeByteArray(_bytes);
 	}
 	
 	public static class Handler extends BackpacksMessageHandler<MessageSyncSettings> {
@@ -48,14 +134,37 @@ public class MessageSyncSettings implements IMessage {
 		public boolean isScheduled() { return false; }
 		@Override
 		@SideOnly(Side.CLIENT)
-		public void handle(MessageSyncSettings message, MessageContext ctx) {
-			for (String key : message._data.getKeySet()) {
-				NBTBase tag = message._data.getTag(key);
-				Setting<?> setting = WearableBackpacks.CONFIG.getSetting(key);
-				if ((setting != null) && setting.doesSync())
-					setting.readSynced(tag);
-			}
+		public void handle(MessageSyncSettings message, MessageContext ctx) { message.apply(); }
+	}
+	
+	/** Applies the received settings, or requests them if only their hash was received. */
+	@SideOnly(Side.CLIENT)
+	void apply() {
+		NBTTagCompound data = _data;
+		Received received = _received;
+		if (_bytes != null) {
+			if (data == null) return;
+			_received = new Received(data, _hash);
+		} else if ((received != null) && Arrays.equals(received.hash, _hash)) {
+			data = received.data;
+		} else {
+			// Only got the hash but don't have matching settings.
+			WearableBackpacks.CHANNEL.sendToServer(MessageRequestSettings.create());
+			return;
+		}
+		
+		for (String key : data.getKeySet()) {
+			NBTBase tag = data.getTag(key);
+			Setting<?> setting = WearableBackpacks.CONFIG.getSetting(key);
+			if ((setting != null) && setting.doesSync())
+				setting.readSynced(tag);
 		}
 	}
 	
+	private static class Received {
+		public final NBTTagCompound data;
+		public final byte[] hash;
+		public Received(NBTTagCompound data, byte[] hash) { this.data = data; this.hash = hash; }
+	}
+	
 }
@@ -0,0 +1,26 @@
+package net.mcft.copy.backpacks;
+
+import java.util.function.Supplier;
+
+/** Very simple timing of operations for the benchmarks in the test source set,
+ *  which are run using the "benchmark" gradle task. Each operation is run for
+ *  a number of warm-up iterations first, so it has been compiled by the JIT. */
+public final class BenchmarkUtils {
+	
+	private BenchmarkUtils() {  }
+	
+	// Results are stored here, so the JIT can't optimize the operations away.
+	public static volatile Object sink;
+	
+	/** Runs the operation for the number of iterations,
+	 *  prints and returns the average time it took in nanoseconds. */
+	public static double run(String name, int iterations, Supplier<?> operation) {
+		for (int i = 0; i < iterations; i++) sink = operation.get();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) sink = operation.get();
+		double nanos = (double)(System.nanoTime() - start) / iterations;
+		System.out.println(String.format("%-48s %12.1f ns/op", name, nanos));
+		return nanos;
+	}
+	
+}
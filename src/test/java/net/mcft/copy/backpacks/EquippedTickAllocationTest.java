@@ -0,0 +1,149 @@
+package net.mcft.copy.backpacks;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.item.EntityArmorStand;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.inventory.EntityEquipmentSlot;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.tileentity.TileEntity;
+
+import net.minecraftforge.fml.relauncher.FMLInjectionData;
+
+import net.mcft.copy.backpacks.api.BackpackHelper;
+import net.mcft.copy.backpacks.api.BackpackRegistry;
+import net.mcft.copy.backpacks.api.IBackpack;
+import net.mcft.copy.backpacks.api.IBackpackData;
+import net.mcft.copy.backpacks.api.IBackpackType;
+import net.mcft.copy.backpacks.config.BackpacksConfig;
+import net.mcft.copy.backpacks.misc.BackpackCapability;
+import net.mcft.copy.backpacks.misc.BackpackWearers;
+
+/** Makes sure updating equipped backpacks doesn't allocate anything once
+ *  it's warmed up, by measuring the bytes allocated by the current thread
+ *  while ticking many wearers, in both a server and a client world, with
+ *  the backpack stored in the capability or worn as chest armor.
+ *  Lid animations (BackpackHelper.updateLidTicks) are not covered, as
+ *  they're only updated by the client's LidAnimations. */
+public class EquippedTickAllocationTest {
+	
+	private static final int WEARERS = 200;
+	private static final int WARMUP_TICKS = 1000;
+	private static final int TICKS = 10000;
+	
+	@ClassRule
+	public static final TemporaryFolder folder = new TemporaryFolder();
+	
+	private static Item backpackItem;
+	
+	@BeforeClass
+	public static void setup() throws Exception {
+		Bootstrap.register();
+		BackpackRegistry.registerBackpackEntity(EntityArmorStand.class);
+		backpackItem = new TestBackpack();
+		
+		// Updating chest armor backpacks reads the debug config. Forge's Configuration
+		// resolves its file relative to the Minecraft directory, which is normally set by FML.
+		Field minecraftHome = FMLInjectionData.class.getDeclaredField("minecraftHome");
+		minecraftHome.setAccessible(true);
+		minecraftHome.set(null, folder.getRoot());
+		WearableBackpacks.CONFIG = new BackpacksConfig(new File(folder.getRoot(), "config.cfg"));
+		WearableBackpacks.CONFIG.load();
+	}
+	
+	@Test
+	public void serverTickDoesNotAllocate() { assertEquals(0, measureTicks(new TestWorld(false), false)); }
+	
+	@Test
+	public void clientTickDoesNotAllocate() { assertEquals(0, measureTicks(new TestWorld(true), false)); }
+	
+	@Test
+	public void serverChestArmorTickDoesNotAllocate() { assertEquals(0, measureTicks(new TestWorld(false), true)); }
+	
+	@Test
+	public void clientChestArmorTickDoesNotAllocate() { assertEquals(0, measureTicks(new TestWorld(true), true)); }
+	
+	/** Sets up wearers in the world, then returns the
+	 *  number of bytes allocated while ticking them. */
+	private static long measureTicks(TestWorld world, boolean chestArmor) {
+		ProxyCommon proxy = new ProxyCommon();
+		List<EntityLivingBase> entities = new ArrayList<EntityLivingBase>();
+		for (int i = 0; i < WEARERS; i++) {
+			EntityArmorStand entity = new EntityArmorStand(world);
+			world.addEntity(entity);
+			BackpackCapability backpack = new BackpackCapability(entity);
+			BackpackHelper.registerBackpackCapability(entity, backpack);
+			// Set up the same way setStack would when equipAsChestArmor is
+			// enabled, without queuing an update to send to trackers.
+			if (chestArmor) {
+				entity.setItemStackToSlot(EntityEquipmentSlot.CHEST, new ItemStack(backpackItem));
+				backpack.lastType = (IBackpackType)backpackItem;
+				backpack.invalidate();
+			} else backpack.stack = new ItemStack(backpackItem);
+			// There's no entity tracker, so don't let wearers go dormant.
+			backpack.checkDormant = false;
+			BackpackWearers.add(backpack);
+			entities.add(entity);
+		}
+		
+		ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP_TICKS; i++) tick(world, proxy, entities);
+		
+		// Measuring allocates a little by itself, so that is subtracted.
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			long start = threads.getThreadAllocatedBytes(thread);
+			overhead = Math.min(overhead, threads.getThreadAllocatedBytes(thread) - start);
+		}
+		
+		long start = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < TICKS; i++) tick(world, proxy, entities);
+		long allocated = threads.getThreadAllocatedBytes(thread) - start - overhead;
+		
+		BackpackWearers.unload(world);
+		return Math.max(0, allocated);
+	}
+	
+	private static void tick(TestWorld world, ProxyCommon proxy, List<EntityLivingBase> entities) {
+		world.tick();
+		proxy.updateEquippedBackpacks(world);
+		for (int i = 0; i < entities.size(); i++) {
+			IBackpack backpack = BackpackHelper.getBackpack(entities.get(i));
+			if ((backpack == null) || backpack.getStack().isEmpty())
+				throw new AssertionError("Wearer lost its backpack");
+		}
+	}
+	
+	/** Backpack type which asks to be ticked every tick, but does nothing. */
+	private static class TestBackpack extends Item implements IBackpackType {
+		@Override public void onSpawnedWith(EntityLivingBase entity, IBackpack backpack) {  }
+		@Override public void onEquip(EntityLivingBase entity, TileEntity tileEntity, IBackpack backpack) {  }
+		@Override public void onUnequip(EntityLivingBase entity, TileEntity tileEntity, IBackpack backpack) {  }
+		@Override public void onPlacedInteract(EntityPlayer player, TileEntity tileEntity, IBackpack backpack) {  }
+		@Override public void onEquippedInteract(EntityPlayer player, EntityLivingBase target, IBackpack backpack) {  }
+		@Override public void onEquippedTick(EntityLivingBase entity, IBackpack backpack) {  }
+		@Override public void onDeath(EntityLivingBase entity, IBackpack backpack) {  }
+		@Override public void onEquippedBroken(EntityLivingBase entity, IBackpack backpack) {  }
+		@Override public void onFaultyRemoval(EntityLivingBase entity, IBackpack backpack) {  }
+		@Override public void onBlockBreak(TileEntity tileEntity, IBackpack backpack) {  }
+		@Override public IBackpackData createBackpackData(ItemStack stack) { return null; }
+	}
+	
+}
@@ -0,0 +1,119 @@
+package net.mcft.copy.backpacks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+
+/** Compares the search for a spot to place a backpack on death, using the
+ *  precomputed offset table and per-column ground search in ProxyCommon,
+ *  with the loop previously used in onLivingDeath. Instead of actually
+ *  placing the backpack, both check for a replaceable block on solid ground. */
+public class PlacementSearchBenchmark {
+	
+	private static final int ITERATIONS = 200000;
+	
+	private static IBlockState STONE, AIR;
+	
+	@BeforeClass
+	public static void setup() {
+		Bootstrap.register();
+		STONE = Blocks.STONE.getDefaultState();
+		AIR   = Blocks.AIR.getDefaultState();
+	}
+	
+	@Test
+	public void flatGround() {
+		run("flat ground", pos -> ((pos.getY() < 64) ? STONE : AIR), 64);
+	}
+	
+	@Test
+	public void cave() {
+		// Narrow tunnel along the X axis, two blocks high.
+		run("cave", pos -> (((pos.getZ() == 0) && (pos.getY() >= 30) && (pos.getY() <= 31)) ? AIR : STONE), 30);
+	}
+	
+	@Test
+	public void midAir() {
+		run("mid-air", pos -> ((pos.getY() < 64) ? STONE : AIR), 80);
+	}
+	
+	@Test
+	public void overVoid() {
+		run("void", pos -> AIR, 64);
+	}
+	
+	private static void run(String name, Function<BlockPos, IBlockState> terrain, double y) {
+		TestWorld world = new TestWorld(false);
+		world.terrain = terrain;
+		BenchmarkUtils.run("Offset table, " + name, ITERATIONS, () -> searchTable(world, 0.5, y, 0.5));
+		BenchmarkUtils.run("Previous loop, " + name, ITERATIONS, () -> searchPrevious(world, 0.5, y, 0.5));
+	}
+	
+	/** Search as done by ProxyCommon.placeBackpackNear. */
+	private static BlockPos searchTable(World world, double x, double y, double z) {
+		int blockX = MathHelper.floor(x);
+		int blockY = MathHelper.floor(y);
+		int blockZ = MathHelper.floor(z);
+		MutableBlockPos pos = new MutableBlockPos();
+		for (int i = 0; i < ProxyCommon.PLACEMENT_X.length; i++) {
+			pos.setPos(blockX + ProxyCommon.PLACEMENT_X[i], blockY, blockZ + ProxyCommon.PLACEMENT_Z[i]);
+			if (ProxyCommon.findGround(world, pos, ProxyCommon.PLACEMENT_DOWN[i], ProxyCommon.PLACEMENT_UP[i]) &&
+			    canPlace(world, pos)) return pos.toImmutable();
+		}
+		return null;
+	}
+	
+	/** Search as previously done in ProxyCommon.onLivingDeath. */
+	private static BlockPos searchPrevious(World world, double x, double y, double z) {
+		List<BlockCoord> coords = new ArrayList<BlockCoord>();
+		for (int dx = -2; dx <= 2; dx++)
+			for (int dz = -2; dz <= 2; dz++)
+				coords.add(new BlockCoord(x, y, z, dx, dz));
+		coords.sort((o1, o2) -> Double.compare(o1.distance, o2.distance));
+		while (!coords.isEmpty()) {
+			Iterator<BlockCoord> iter = coords.iterator();
+			while (iter.hasNext()) {
+				BlockCoord coord = iter.next();
+				if (canPlace(world, coord)) return coord.toImmutable();
+				boolean replacable = world.getBlockState(coord).getBlock().isReplaceable(world, coord);
+				// Kept as it was: add returns a new position, so the coordinate never actually moved.
+				coord.add(0, (replacable ? -1 : 1), 0);
+				coord.moved += (replacable ? 1 : 5);
+				if ((coord.getY() <= 0) || (coord.getY() > world.getHeight()) ||
+					(coord.moved > 24 - coord.distance * 4)) iter.remove();
+			}
+		}
+		return null;
+	}
+	
+	private static boolean canPlace(World world, BlockPos pos) {
+		if (!world.getBlockState(pos).getBlock().isReplaceable(world, pos)) return false;
+		BlockPos below = pos.down();
+		return world.getBlockState(below).isSideSolid(world, below, EnumFacing.UP);
+	}
+	
+	private static class BlockCoord extends MutableBlockPos {
+		public double distance;
+		public int moved = 0;
+		public BlockCoord(double x, double y, double z, int dx, int dz) {
+			super((int)x + dx, (int)y, (int)z + dz);
+			distance = Math.sqrt(Math.pow(getX() + 0.5 - x, 2) +
+			                     Math.pow(getY() + 0.5 - y, 2) +
+			                     Math.pow(getZ() + 0.5 - z, 2));
+		}
+	}
+	
+}
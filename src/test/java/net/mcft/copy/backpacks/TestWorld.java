@@ -0,0 +1,56 @@
+package net.mcft.copy.backpacks;
+
+import java.util.function.Function;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.init.Blocks;
+import net.minecraft.profiler.Profiler;
+import net.minecraft.util.IntHashMap;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.GameType;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldProviderSurface;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.chunk.IChunkProvider;
+import net.minecraft.world.storage.WorldInfo;
+
+/** Minimal world without chunks for tests and benchmarks. Blocks are taken
+ *  from the terrain function, entities have to be added using addEntity.
+ *  Requires net.minecraft.init.Bootstrap to have been registered. */
+public class TestWorld extends World {
+	
+	private final IntHashMap<Entity> _entitiesById = new IntHashMap<Entity>();
+	
+	public Function<BlockPos, IBlockState> terrain = pos -> Blocks.AIR.getDefaultState();
+	
+	public TestWorld(boolean client) {
+		super(null, new WorldInfo(new WorldSettings(0, GameType.SURVIVAL, false, false, WorldType.DEFAULT), "test"),
+		      new WorldProviderSurface(), new Profiler(), client);
+	}
+	
+	/** Adds an entity so it can be looked up by its ID. */
+	public void addEntity(Entity entity) {
+		_entitiesById.addKey(entity.getEntityId(), entity);
+		loadedEntityList.add(entity);
+	}
+	
+	/** Advances the world's time by one tick. */
+	public void tick() {
+		worldInfo.setWorldTotalTime(worldInfo.getWorldTotalTime() + 1);
+	}
+	
+	@Override
+	public Entity getEntityByID(int id) { return _entitiesById.lookup(id); }
+	
+	@Override
+	public IBlockState getBlockState(BlockPos pos) { return terrain.apply(pos); }
+	
+	@Override
+	protected IChunkProvider createChunkProvider() { return null; }
+	
+	@Override
+	protected boolean isChunkLoaded(int x, int z, boolean allowEmpty) { return true; }
+	
+}
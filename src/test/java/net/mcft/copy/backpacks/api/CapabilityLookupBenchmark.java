@@ -0,0 +1,66 @@
+package net.mcft.copy.backpacks.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.minecraft.entity.item.EntityArmorStand;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.ResourceLocation;
+
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityDispatcher;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+
+import net.mcft.copy.backpacks.BenchmarkUtils;
+import net.mcft.copy.backpacks.TestWorld;
+import net.mcft.copy.backpacks.misc.BackpackCapability;
+
+/** Compares looking up an entity's backpack capability through Forge's
+ *  CapabilityDispatcher (as entity.getCapability does) with
+ *  BackpackHelper.getBackpackCapability, for different numbers of
+ *  other capability providers attached to the entity.
+ *  <p>
+ *  Capabilities aren't injected outside of a running game, so
+ *  IBackpack.CAPABILITY is null here, which the backpack provider
+ *  still matches, while the other providers don't return anything. */
+public class CapabilityLookupBenchmark {
+	
+	private static final int ITERATIONS = 10000000;
+	
+	@BeforeClass
+	public static void setup() {
+		Bootstrap.register();
+		BackpackRegistry.registerBackpackEntity(EntityArmorStand.class);
+	}
+	
+	@Test
+	public void lookup() {
+		for (int others : new int[]{ 0, 10, 50 }) {
+			EntityArmorStand entity = new EntityArmorStand(new TestWorld(false));
+			// The backpack provider is the last one, like in a large pack where it
+			// gets attached after the capabilities of many other mods.
+			Map<ResourceLocation, ICapabilityProvider> providers = new LinkedHashMap<ResourceLocation, ICapabilityProvider>();
+			for (int i = 0; i < others; i++)
+				providers.put(new ResourceLocation("benchmark", "provider" + i), new EmptyProvider());
+			providers.put(BackpackCapability.IDENTIFIER, new BackpackCapability.Provider(entity));
+			CapabilityDispatcher dispatcher = new CapabilityDispatcher(providers);
+			
+			BenchmarkUtils.run("CapabilityDispatcher, " + others + " other providers", ITERATIONS,
+				() -> dispatcher.getCapability(IBackpack.CAPABILITY, null));
+			BenchmarkUtils.run("BackpackHelper, " + others + " other providers", ITERATIONS,
+				() -> BackpackHelper.getBackpackCapability(entity));
+		}
+	}
+	
+	private static class EmptyProvider implements ICapabilityProvider {
+		@Override
+		public boolean hasCapability(Capability<?> capability, EnumFacing facing) { return false; }
+		@Override
+		public <T> T getCapability(Capability<T> capability, EnumFacing facing) { return null; }
+	}
+	
+}